@@ -0,0 +1,72 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+/**
+ * Checks that RegisterAllocator.allocateRegister() allocates nothing per operation: it counts the bytes the
+ * thread allocates while blocks of growing size are allocated, and fails if that grows with the block.
+ * Without spilling nothing may be allocated at all; with spilling only the inserted code may grow.
+ * Run with "make check"; the exit status is 1 if the check fails.
+ */
+public class AllocationCheck {
+    private static final int[] OPERATIONS = {10_000, 100_000, 1_000_000};
+    private static final int REGISTERS = 8;
+    private static final int WARMUP_ROUNDS = 5;
+    /**
+     * the inserted code grows by doubling, so its capacity is at most twice its size, and the smaller arrays it has
+     * outgrown add up to that capacity again; a record is 16 ints
+     */
+    private static final long BYTES_PER_INSERTED_OPERATION = 4 * 64;
+    private static final long SLACK_BYTES = 16 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        boolean failed = false;
+        System.out.println(String.format("%-10s %4s %12s %10s %14s", "ops", "k", "spill ops", "bytes", "bytes allowed"));
+        for (int operations : OPERATIONS) {
+            File file = generate(operations);
+            for (int k : new int[] {REGISTERS + 1, 3}) {
+                long bytes = 0;
+                int inserted = 0;
+                for (int round = 0; round <= WARMUP_ROUNDS; round++) { // the last round is measured
+                    Parser parser = new Parser(file);
+                    parser.parse();
+                    parser.renameIR();
+                    RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+                    long before = threads.getCurrentThreadAllocatedBytes();
+                    allocator.allocateRegister();
+                    bytes = threads.getCurrentThreadAllocatedBytes() - before;
+                    inserted = parser.getIR().getInsertedCode() == null ? 0 : parser.getIR().getInsertedCode().size();
+                }
+                long allowed = SLACK_BYTES + BYTES_PER_INSERTED_OPERATION * inserted;
+                failed |= bytes > allowed;
+                System.out.println(String.format("%-10d %4d %12d %10d %14d%s", operations, k, inserted, bytes, allowed, bytes > allowed ? "  FAILED" : ""));
+            }
+            file.delete();
+        }
+        System.out.println(failed ? "allocation check failed" : "allocation check passed");
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * writes a block that cycles through REGISTERS source registers, so that k = REGISTERS + 1 needs no spilling
+     */
+    private static File generate(int operations) throws IOException {
+        File file = File.createTempFile("alloc.", ".i");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int r = 0; r < REGISTERS; r++) {
+                out.println("load r" + r + " => r" + r);
+            }
+            for (int i = REGISTERS; i < operations - REGISTERS; i++) {
+                int r = i % REGISTERS;
+                out.println("add r" + r + ", r" + ((r + 1) % REGISTERS) + " => r" + r);
+            }
+            for (int r = 0; r < REGISTERS; r++) {
+                out.println("store r" + r + " => r" + r);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * Compares the local allocator with the graph-coloring one (--coloring): first the instructions and cycles (run by
+ * IlocSimulator) of every block under test_inputs that parses, summed over every k from 3 to 16, with the number of
+ * regions coloring left to the local allocator, then the allocation
+ * time of generated blocks of growing size, where about 2k values stay live and nothing is ever dead, so that every
+ * block is a single region, with the number of regions coloring left to the local allocator. Run with "make bench";
+ * another directory of blocks can be given as argument.
+ */
+public class GraphColoringReport {
+    private static final int MIN_K = 3;
+    private static final int MAX_K = 16;
+    private static final int[] SIZES = {1_000, 4_000, 16_000, 32_000, 128_000};
+    private static final int TIMED_K = 8;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = Reports.blocks(args);
+        System.out.println(String.format("%-12s %12s %12s %12s %12s %10s", "block", "insts", "color insts", "cycles",
+            "color cycles", "fallbacks"));
+        long[] total = new long[5];
+        for (Path path : files) {
+            if (!Reports.parses(path.toFile())) continue;
+            long[] sum = new long[5];
+            for (int k = MIN_K; k <= MAX_K; k++) {
+                long[] local = allocate(path.toFile(), k, false);
+                long[] coloring = allocate(path.toFile(), k, true);
+                sum[0] += local[0];
+                sum[1] += coloring[0];
+                sum[2] += local[1];
+                sum[3] += coloring[1];
+                sum[4] += coloring[2];
+            }
+            System.out.println(String.format("%-12s %12d %12d %12d %12d %10d", path.getFileName(), sum[0], sum[1], sum[2],
+                sum[3], sum[4]));
+            for (int i = 0; i < total.length; i++) {
+                total[i] += sum[i];
+            }
+        }
+        System.out.println(String.format("%-12s %12d %12d %12d %12d %10d", "total", total[0], total[1], total[2], total[3],
+            total[4]));
+
+        System.out.println();
+        System.out.println(String.format("%-10s %4s %12s %12s %12s %12s %10s", "ops", "k", "local ms", "color ms", "insts",
+            "color insts", "fallbacks"));
+        for (int size : SIZES) {
+            File file = generate(size, 2 * TIMED_K);
+            double local = Double.MAX_VALUE;
+            double coloring = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) { // keep the best round
+                local = Math.min(local, measure(file, TIMED_K, false));
+                coloring = Math.min(coloring, measure(file, TIMED_K, true));
+            }
+            long[] colored = allocate(file, TIMED_K, true);
+            System.out.println(String.format("%-10d %4d %12.1f %12.1f %12d %12d %10d", size, TIMED_K, local, coloring,
+                allocate(file, TIMED_K, false)[0], colored[0], colored[2]));
+            file.delete();
+        }
+    }
+
+    private static Parser renamed(File file) {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        return parser;
+    }
+    /**
+     * @return the number of regions the graph-coloring allocator left to the local one
+     */
+    private static int allocate(Parser parser, int k, boolean coloring) {
+        if (coloring) return GraphColoringAllocator.allocate(k, new Options(), parser.getIR());
+        new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber()).allocateRegister();
+        return 0;
+    }
+
+    /**
+     * @return the number of instructions and the simulated cycles of the block allocated with k registers, and the number of
+     *         regions left to the local allocator
+     */
+    private static long[] allocate(File file, int k, boolean coloring) throws IOException {
+        Parser parser = renamed(file);
+        int fallbacks = allocate(parser, k, coloring);
+        IRBlock block = parser.getIR();
+        return new long[] {Reports.instructions(block), Reports.cycles(file, block), fallbacks};
+    }
+
+    /**
+     * @return the milliseconds the allocation of the block with k registers takes
+     */
+    private static double measure(File file, int k, boolean coloring) {
+        Parser parser = renamed(file);
+        long start = System.nanoTime();
+        allocate(parser, k, coloring);
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /**
+     * writes a block of about operations operations that loads values into registers source registers, combines
+     * random pairs of them and then stores them all
+     */
+    private static File generate(int operations, int registers) throws IOException {
+        File file = File.createTempFile("coloring.", ".i");
+        Random random = new Random(412);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int r = 0; r < registers; r++) {
+                out.println("load r" + r + " => r" + r);
+            }
+            for (int i = registers; i < operations - registers; i++) {
+                out.println("add r" + random.nextInt(registers) + ", r" + random.nextInt(registers) + " => r" + random.nextInt(registers));
+            }
+            for (int r = 0; r < registers; r++) {
+                out.println("store r" + r + " => r" + r);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures the memory footprint of the IR (bytes per operation after parsing) and the throughput of
+ * renaming and allocating it (million operations per second).
+ * Run with "make bench"; a block can be given as argument, otherwise a random one is generated.
+ */
+public class IRBenchmark {
+    private static final int OPERATIONS = 1_000_000;
+    private static final int REGISTERS = 20;
+    private static final int K = 8;
+    private static final int ROUNDS = 4;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File file = args.length > 0 ? new File(args[0]) : generate();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println(String.format("%-8s %10s %14s %16s", "round", "bytes/op", "rename Mops/s", "allocate Mops/s"));
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = usedMemory(runtime);
+            Parser parser = new Parser(file);
+            parser.parse();
+            long after = usedMemory(runtime);
+            int operations = parser.getNumOperationsParsed();
+
+            long start = System.nanoTime();
+            parser.renameIR();
+            long renamed = System.nanoTime();
+            parser.allocateRegisters(K);
+            long allocated = System.nanoTime();
+            System.out.println(String.format("%-8d %10.1f %14.1f %16.1f", round, (after - before) / (double) operations,
+                operations / ((renamed - start) / 1e3), operations / ((allocated - renamed) / 1e3)));
+        }
+        if (args.length == 0) file.delete();
+    }
+
+    private static long usedMemory(Runtime runtime) throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * writes a block of loads, arithmetic and stores over REGISTERS source registers,
+     * which needs spilling with K physical registers
+     */
+    private static File generate() throws IOException {
+        File file = File.createTempFile("ir.", ".i");
+        Random random = new Random(412);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int r = 0; r < REGISTERS; r++) {
+                out.println("loadI " + (4 * r) + " => r" + r);
+            }
+            String[] arithops = {"add", "sub", "mult", "lshift", "rshift"};
+            for (int i = 0; i < OPERATIONS - REGISTERS; i++) {
+                int r1 = random.nextInt(REGISTERS);
+                int r2 = random.nextInt(REGISTERS);
+                int r3 = random.nextInt(REGISTERS);
+                switch (random.nextInt(8)) {
+                    case 0:
+                        out.println("load r" + r1 + " => r" + r3);
+                        break;
+                    case 1:
+                        out.println("store r" + r1 + " => r" + r2);
+                        break;
+                    case 2:
+                        out.println("loadI " + random.nextInt(1024) + " => r" + r3);
+                        break;
+                    default:
+                        out.println(arithops[random.nextInt(arithops.length)] + " r" + r1 + ", r" + r2 + " => r" + r3);
+                        break;
+                }
+            }
+        }
+        return file;
+    }
+}
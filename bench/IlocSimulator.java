@@ -0,0 +1,114 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import IntermediateRepresentation.IRBlock;
+import Token.Opcode;
+
+/**
+ * Runs an allocated block, with its inserted code, on a model of the machine of the ILOC simulator and counts the
+ * cycles it takes. One operation issues per cycle, in order, and stalls until the registers it reads have been
+ * written; a load or output also stalls until the stores before it to the same address are done. A load, store or
+ * mult takes 3 cycles and any other operation 1, so an independent operation can issue while a slow one completes.
+ * Registers that are read before they are written hold 0, and so does memory outside the initial values.
+ */
+final class IlocSimulator {
+    private static final int SLOW_LATENCY = 3;
+
+    private final Map<Integer, Integer> memory;
+    /** the cycle from which each address can be read, once the last store to it is done */
+    private final Map<Integer, Long> stored = new HashMap<>();
+    private int[] registers = new int[64];
+    /** the cycle from which each register can be read */
+    private long[] ready = new long[64];
+    private long issued;
+    private long done;
+
+    /**
+     * @param memory the initial values of memory by address
+     */
+    IlocSimulator(Map<Integer, Integer> memory) {
+        this.memory = new HashMap<>(memory);
+    }
+
+    /**
+     * @return the number of cycles from the first operation issuing to the last one completing
+     */
+    long run(IRBlock block) {
+        IRBlock inserted = block.getInsertedCode();
+        for (int op = 0; op < block.size(); op++) {
+            for (int i = block.firstInsertedBefore(op); i < block.firstInsertedBefore(op + 1); i++) {
+                execute(inserted, i);
+            }
+            execute(block, op);
+        }
+        return this.done;
+    }
+
+    private void execute(IRBlock code, int op) {
+        if (code.isRemoved(op)) return;
+        Opcode opCode = code.getOpCode(op);
+        long issue = this.issued + 1;
+        int useCount = code.useCount(op);
+        for (int i = 0; i < useCount; i++) {
+            issue = Math.max(issue, this.ready[register(code.getPR(op, code.use(op, i)))]);
+        }
+        int address = 0;
+        if (opCode == Opcode.load) address = this.registers[code.getPR(op, IRBlock.OP1)];
+        if (opCode == Opcode.output) address = code.getSR(op, IRBlock.OP1);
+        if (opCode == Opcode.load || opCode == Opcode.output) issue = Math.max(issue, this.stored.getOrDefault(address, 0L));
+        long latency = opCode == Opcode.load || opCode == Opcode.store || opCode == Opcode.mult ? SLOW_LATENCY : 1;
+        this.issued = issue;
+        this.done = Math.max(this.done, issue + latency - 1);
+
+        int result = 0;
+        switch (opCode) {
+            case loadI:
+                result = code.getSR(op, IRBlock.OP1);
+                break;
+            case load:
+                result = this.memory.getOrDefault(address, 0);
+                break;
+            case store:
+                int target = this.registers[code.getPR(op, IRBlock.OP3)];
+                this.memory.put(target, this.registers[code.getPR(op, IRBlock.OP1)]);
+                this.stored.put(target, issue + latency);
+                break;
+            case add, sub, mult, lshift, rshift:
+                result = arithmetic(opCode, this.registers[code.getPR(op, IRBlock.OP1)], this.registers[code.getPR(op, IRBlock.OP2)]);
+                break;
+            case output, nop:
+                break;
+        }
+        int def = code.def(op);
+        if (def != -1) {
+            int pr = register(code.getPR(op, def));
+            this.registers[pr] = result;
+            this.ready[pr] = issue + latency;
+        }
+    }
+    private static int arithmetic(Opcode opCode, int left, int right) {
+        switch (opCode) {
+            case add:
+                return left + right;
+            case sub:
+                return left - right;
+            case mult:
+                return left * right;
+            case lshift:
+                return left << right;
+            default:
+                return left >> right;
+        }
+    }
+    /**
+     * @return pr, after making room for it in the register tables
+     */
+    private int register(int pr) {
+        if (pr >= this.registers.length) {
+            this.registers = Arrays.copyOf(this.registers, 2 * pr);
+            this.ready = Arrays.copyOf(this.ready, 2 * pr);
+        }
+        return pr;
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the linear-scan allocator (--linear-scan) with the local one on generated blocks of millions of operations:
+ * operations allocated per second, and the stores and restores each inserts. Every block keeps about twice as many
+ * values live as there are registers. Run with "make bench".
+ */
+public class LinearScanBenchmark {
+    private static final int[] SIZES = {1_000_000, 2_000_000, 4_000_000};
+    private static final int[] KS = {8, 64};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(String.format("%-9s %4s %12s %12s %12s %12s %12s %14s", "ops", "k", "local Mop/s", "scan Mop/s",
+            "stores", "scan stores", "restores", "scan restores"));
+        for (int size : SIZES) {
+            for (int k : KS) {
+                File file = generate(size, 2 * k);
+                double[] local = {0};
+                double[] scan = {0};
+                for (int round = 0; round < ROUNDS; round++) { // keep the best round
+                    local = best(local, measure(file, k, false));
+                    scan = best(scan, measure(file, k, true));
+                }
+                System.out.println(String.format("%-9d %4d %12.2f %12.2f %12d %12d %12d %14d", size, k, local[0], scan[0],
+                    (long) local[1], (long) scan[1], (long) local[2], (long) scan[2]));
+                file.delete();
+            }
+        }
+    }
+
+    private static double[] best(double[] a, double[] b) {
+        return a[0] >= b[0] ? a : b;
+    }
+
+    /**
+     * @return the million operations allocated per second, and the stores and restores inserted
+     */
+    private static double[] measure(File file, int k, boolean linearScan) {
+        Parser parser = renamed(file);
+        long start;
+        if (linearScan) {
+            LinearScanAllocator allocator = new LinearScanAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+            start = System.nanoTime();
+            allocator.allocateRegister();
+            return new double[] {parser.getIR().size() / ((System.nanoTime() - start) / 1e3), allocator.getStoreCount(), allocator.getRestoreCount()};
+        }
+        RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+        start = System.nanoTime();
+        allocator.allocateRegister();
+        return new double[] {parser.getIR().size() / ((System.nanoTime() - start) / 1e3), allocator.getStoreCount(), allocator.getRestoreCount()};
+    }
+
+    private static Parser renamed(File file) {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        return parser;
+    }
+
+    /**
+     * writes a block that loads values into registers source registers, combines random pairs of them and stores them
+     */
+    private static File generate(int operations, int registers) throws IOException {
+        File file = File.createTempFile("linearscan.", ".i");
+        Random random = new Random(412);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int r = 0; r < registers; r++) {
+                out.println("load r" + r + " => r" + r);
+            }
+            for (int i = registers; i < operations - registers; i++) {
+                out.println("add r" + random.nextInt(registers) + ", r" + random.nextInt(registers) + " => r" + random.nextInt(registers));
+            }
+            for (int r = 0; r < registers; r++) {
+                out.println("store r" + r + " => r" + r);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * Counts the instructions of the allocated code before and after the peephole pass (--peephole), and what the pass
+ * removed by pattern, for every block under test_inputs that parses and every k from 3 to 16.
+ * Run with "make bench"; another directory of blocks can be given as argument.
+ */
+public class PeepholeReport {
+    private static final int MIN_K = 3;
+    private static final int MAX_K = 16;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = Reports.blocks(args);
+        System.out.println(String.format("%-12s %4s %10s %10s %8s %8s %8s", "block", "k", "insts", "after", "nops", "reloads", "loadIs"));
+        long[] total = new long[5];
+        for (Path path : files) {
+            if (!Reports.parses(path.toFile())) continue;
+            for (int k = MIN_K; k <= MAX_K; k++) {
+                long[] current = allocate(path.toFile(), k);
+                System.out.println(String.format("%-12s %4d %10d %10d %8d %8d %8d", path.getFileName(), k,
+                    current[0], current[1], current[2], current[3], current[4]));
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += current[i];
+                }
+            }
+        }
+        System.out.println(String.format("%-12s %4s %10d %10d %8d %8d %8d", "total", "", total[0], total[1], total[2], total[3], total[4]));
+    }
+
+    /**
+     * @return the number of instructions of the block allocated with k registers before and after the peephole pass,
+     *         followed by the nops, reloads and loadIs it removed
+     */
+    private static long[] allocate(File file, int k) {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+        allocator.allocateRegister();
+        IRBlock block = parser.getIR();
+        long before = Reports.instructions(block);
+        Peephole peephole = new Peephole(block, k);
+        peephole.run();
+        long removed = peephole.getRemovedNops() + peephole.getRemovedReloads() + peephole.getRemovedLoadIs();
+        return new long[] {before, before - removed, peephole.getRemovedNops(), peephole.getRemovedReloads(), peephole.getRemovedLoadIs()};
+    }
+}
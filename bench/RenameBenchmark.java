@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures the speedup of renaming chunks of a multi-million-operation block in parallel over the sequential
+ * renaming, for 1, 2, 4, ... threads up to the number of processors.
+ * Run with "make bench"; the number of operations and the largest number of threads can be given as arguments.
+ */
+public class RenameBenchmark {
+    private static final int REGISTERS = 64;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        File file = generate(operations);
+        double sequential = measure(file, new Options());
+        System.out.println(String.format("%d operations, %d processors", operations, Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format("%-12s %12s %10s", "threads", "ms", "speedup"));
+        System.out.println(String.format("%-12s %12.1f %10.2f", "sequential", sequential, 1.0));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new Options();
+            options.set("--parallel");
+            options.set("--threads=" + threads);
+            double parallel = measure(file, options);
+            System.out.println(String.format("%-12d %12.1f %10.2f", threads, parallel, sequential / parallel));
+        }
+        file.delete();
+    }
+
+    /**
+     * @return the best time of renaming the parsed block in ms; renaming can be repeated since it overwrites its results
+     */
+    private static double measure(File file, Options options) {
+        Parser parser = new Parser(file, options);
+        parser.parse();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            parser.renameIR();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /**
+     * writes a block of loads, arithmetic and stores over REGISTERS source registers
+     */
+    private static File generate(int operations) throws IOException {
+        File file = File.createTempFile("rename.", ".i");
+        Random random = new Random(412);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            String[] arithops = {"add", "sub", "mult", "lshift", "rshift"};
+            for (int i = 0; i < operations; i++) {
+                int r1 = random.nextInt(REGISTERS);
+                int r2 = random.nextInt(REGISTERS);
+                int r3 = random.nextInt(REGISTERS);
+                switch (random.nextInt(8)) {
+                    case 0:
+                        out.println("load r" + r1 + " => r" + r3);
+                        break;
+                    case 1:
+                        out.println("store r" + r1 + " => r" + r2);
+                        break;
+                    case 2:
+                        out.println("loadI " + random.nextInt(1024) + " => r" + r3);
+                        break;
+                    default:
+                        out.println(arithops[random.nextInt(arithops.length)] + " r" + r1 + ", r" + r2 + " => r" + r3);
+                        break;
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * Compares allocating blocks as they are with allocating them after PressureScheduler (--reorder): maxlive, and the
+ * instructions, weighted cycles (as --reorder weighs spill code) and cycles (run by IlocSimulator) of the allocated
+ * code, for every block under test_inputs that parses and every k from 3 to 16 smaller than its maxlive. The totals
+ * count the block/k pairs that don't spill at all after reordering. Run with "make bench"; another directory of blocks can be given as argument.
+ */
+public class ReorderReport {
+    private static final int MIN_K = 3;
+    private static final int MAX_K = 16;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = Reports.blocks(args);
+        System.out.println(String.format("%-12s %4s %8s %8s %10s %10s %10s %10s %10s %10s", "block", "k", "maxlive",
+            "after", "insts", "after", "weighted", "after", "cycles", "after"));
+        long[] total = new long[6];
+        int unspilled = 0;
+        for (Path path : files) {
+            if (!Reports.parses(path.toFile())) continue;
+            for (int k = MIN_K; k <= MAX_K; k++) {
+                long[] current = allocate(path.toFile(), k, false);
+                if (k >= current[0]) continue;
+                long[] reordered = allocate(path.toFile(), k, true);
+                System.out.println(String.format("%-12s %4d %8d %8d %10d %10d %10d %10d %10d %10d", path.getFileName(), k,
+                    current[0], reordered[0], current[1], reordered[1], current[2], reordered[2], current[3], reordered[3]));
+                total[0] += current[1];
+                total[1] += reordered[1];
+                total[2] += current[2];
+                total[3] += reordered[2];
+                total[4] += current[3];
+                total[5] += reordered[3];
+                if (k >= reordered[0]) unspilled++;
+            }
+        }
+        System.out.println(String.format("%-12s %4s %8s %8d %10d %10d %10d %10d %10d %10d", "total", "", "", unspilled,
+            total[0], total[1], total[2], total[3], total[4], total[5]));
+    }
+
+    /**
+     * @return the maxlive of the block that is allocated, and the number of instructions, the weighted cycles and the
+     *         simulated cycles of the block allocated with k registers
+     */
+    private static long[] allocate(File file, int k, boolean reorder) throws IOException {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        if (reorder) parser.reorderForPressure(k);
+        new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber()).allocateRegister();
+        IRBlock block = parser.getIR();
+        return new long[] {parser.getMaxLive(), Reports.instructions(block), Reports.weightedCycles(block),
+            Reports.cycles(file, block)};
+    }
+}
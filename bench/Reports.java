@@ -0,0 +1,78 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * What the allocation reports share: the blocks they run over and how they measure the allocated code.
+ */
+final class Reports {
+    private Reports() {
+    }
+
+    /**
+     * @return the .i files under the directory given as first argument, test_inputs if there is none, in name order
+     */
+    static List<Path> blocks(String[] args) throws IOException {
+        try (Stream<Path> paths = Files.walk(Path.of(args.length > 0 ? args[0] : "test_inputs"))) {
+            return paths.filter(path -> path.toString().endsWith(".i")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return whether the file is a block without errors and with at least one operation
+     */
+    static boolean parses(File file) {
+        Parser parser = new Parser(file);
+        parser.validate();
+        return !parser.hasError() && parser.getNumOperationsParsed() > 0;
+    }
+
+    /**
+     * @return the number of operations of the allocated block with its inserted code
+     */
+    static long instructions(IRBlock block) {
+        IRBlock inserted = block.getInsertedCode();
+        return block.size() + (inserted == null ? 0 : inserted.size());
+    }
+
+    /**
+     * @return the static latency weight of the allocated block with its inserted code, as the allocators and --reorder
+     *         weigh spill code
+     */
+    static long weightedCycles(IRBlock block) {
+        return RegisterAllocator.weightedCycles(block) + RegisterAllocator.weightedCycles(block.getInsertedCode());
+    }
+
+    /**
+     * @return the cycles IlocSimulator takes to run the allocated block, with memory as the //SIM INPUT line of the file
+     *         sets it
+     */
+    static long cycles(File file, IRBlock block) throws IOException {
+        return new IlocSimulator(simInput(file)).run(block);
+    }
+
+    /**
+     * @return the values "-i address value..." on the //SIM INPUT line of the file puts into memory, one word each
+     */
+    private static Map<Integer, Integer> simInput(File file) throws IOException {
+        Map<Integer, Integer> memory = new HashMap<>();
+        try (Stream<String> lines = Files.lines(file.toPath())) {
+            String line = lines.filter(l -> l.startsWith("//SIM INPUT:")).findFirst().orElse("");
+            String[] words = line.substring(Math.min(line.length(), "//SIM INPUT:".length())).trim().split("\\s+");
+            if (words.length < 2 || !words[0].equals("-i")) return memory;
+            int address = Integer.parseInt(words[1]);
+            for (int i = 2; i < words.length; i++, address += 4) {
+                memory.put(address, Integer.parseInt(words[i]));
+            }
+        }
+        return memory;
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import Token.TokenCategory;
+
+/**
+ * Measures scanner throughput (bytes/sec) of the scalar path against the jdk.incubator.vector path
+ * on a comment-heavy block and on a dense block.
+ * Run with "make bench"; the vector numbers are only meaningful when the module is added to the JVM.
+ */
+public class ScannerBenchmark {
+    private static final int OPERATIONS = 400_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        File commentHeavy = generate("comment-heavy", true);
+        File dense = generate("dense", false);
+        WhitespaceSkipper vector = WhitespaceSkipper.vectorized();
+        System.out.println("vector skipper: " + (vector == WhitespaceSkipper.SCALAR ? "not available, scalar fallback" : vector.getClass().getName()));
+        System.out.println(String.format("%-14s %-8s %12s", "block", "mode", "MB/s"));
+        for (File file : new File[] {commentHeavy, dense}) {
+            for (int round = 0; round < ROUNDS; round++) {
+                boolean report = round == ROUNDS - 1; // earlier rounds warm up the JIT
+                double scalar = measure(file, false);
+                double vectorized = measure(file, true);
+                if (report) {
+                    System.out.println(String.format("%-14s %-8s %12.1f", file.getName().split("\\.")[0], "scalar", scalar));
+                    System.out.println(String.format("%-14s %-8s %12.1f", file.getName().split("\\.")[0], "vector", vectorized));
+                }
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * @return MB/s of scanning the whole file into tokens
+     */
+    private static double measure(File file, boolean vectorScan) {
+        Options options = new Options();
+        if (vectorScan) options.set("--vector");
+        long start = System.nanoTime();
+        Scanner scanner = new Scanner(file, options);
+        while (scanner.next() != TokenCategory.EOF) {
+        }
+        long elapsed = System.nanoTime() - start;
+        return file.length() / (elapsed / 1e9) / (1 << 20);
+    }
+
+    /**
+     * writes a block in the style of T8k.i; the comment-heavy one indents with tabs and
+     * comments every operation, the dense one has single blanks and no comments
+     */
+    private static File generate(String name, boolean comments) throws IOException {
+        File file = File.createTempFile(name + ".", ".i");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int i = 0; i < OPERATIONS; i++) {
+                int r = i % 64;
+                if (comments) {
+                    if (i % 8 == 0) out.println("// ---------------------------------------------------------------- step " + i);
+                    out.println("\tadd\tr" + r + ", r" + (r + 1) + "\t\t=>r" + (r + 2) + "\t\t// accumulate the next partial sum into the counter");
+                } else {
+                    out.println("add r" + r + ",r" + (r + 1) + "=>r" + (r + 2));
+                }
+            }
+        }
+        return file;
+    }
+}
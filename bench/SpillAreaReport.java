@@ -0,0 +1,46 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Compares the peak size of the spill area with and without reusing the spill slots of dead VRs, for every block
+ * under test_inputs that parses and every k from 3 to 16, leaving out the ones that don't spill.
+ * Run with "make bench"; another directory of blocks can be given as argument.
+ */
+public class SpillAreaReport {
+    private static final int MIN_K = 3;
+    private static final int MAX_K = 16;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = Reports.blocks(args);
+        System.out.println(String.format("%-12s %4s %14s %14s", "block", "k", "bytes", "reused bytes"));
+        long peak = 0;
+        long reusedPeak = 0;
+        for (Path path : files) {
+            if (!Reports.parses(path.toFile())) continue;
+            for (int k = MIN_K; k <= MAX_K; k++) {
+                int bytes = spillAreaSize(path.toFile(), k, false);
+                int reusedBytes = spillAreaSize(path.toFile(), k, true);
+                if (bytes == 0) continue;
+                System.out.println(String.format("%-12s %4d %14d %14d", path.getFileName(), k, bytes, reusedBytes));
+                peak = Math.max(peak, bytes);
+                reusedPeak = Math.max(reusedPeak, reusedBytes);
+            }
+        }
+        System.out.println(String.format("%-12s %4s %14d %14d", "peak", "", peak, reusedPeak));
+    }
+
+    /**
+     * @return the bytes of spill memory of the block allocated with k registers
+     */
+    private static int spillAreaSize(File file, int k, boolean reuse) {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+        allocator.reuseSpillSlots(reuse);
+        allocator.allocateRegister();
+        return allocator.getSpillAreaSize();
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * Compares the allocated code of the farthest next use victims with the cost-aware ones (--spill-cost), by number of
+ * instructions and by the cycles IlocSimulator takes to run it, for every block under test_inputs that parses and
+ * every k from 3 to 16. Run with "make bench"; another directory of blocks can be given as argument.
+ */
+public class SpillCostReport {
+    private static final int MIN_K = 3;
+    private static final int MAX_K = 16;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = Reports.blocks(args);
+        System.out.println(String.format("%-12s %4s %12s %12s %12s %12s", "block", "k", "insts", "cost insts", "cycles", "cost cycles"));
+        long[] total = new long[4];
+        for (Path path : files) {
+            if (!Reports.parses(path.toFile())) continue;
+            for (int k = MIN_K; k <= MAX_K; k++) {
+                long[] current = allocate(path.toFile(), k, false);
+                long[] costAware = allocate(path.toFile(), k, true);
+                System.out.println(String.format("%-12s %4d %12d %12d %12d %12d", path.getFileName(), k,
+                    current[0], costAware[0], current[1], costAware[1]));
+                total[0] += current[0];
+                total[1] += costAware[0];
+                total[2] += current[1];
+                total[3] += costAware[1];
+            }
+        }
+        System.out.println(String.format("%-12s %4s %12d %12d %12d %12d", "total", "", total[0], total[1], total[2], total[3]));
+    }
+
+    /**
+     * @return the number of instructions and the simulated cycles of the block allocated with k registers
+     */
+    private static long[] allocate(File file, int k, boolean costAware) throws IOException {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+        allocator.useSpillPolicy(SpillPolicy.forName(costAware ? "cost" : "belady"));
+        allocator.allocateRegister();
+        IRBlock block = parser.getIR();
+        return new long[] {Reports.instructions(block), Reports.cycles(file, block)};
+    }
+}
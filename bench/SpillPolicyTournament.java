@@ -0,0 +1,63 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * Allocates every block under test_inputs that parses with every SpillPolicy and every k from 3 to 16, and prints the
+ * stores, restores, instructions and cycles of each, as IlocSimulator runs the allocated code. The totals count how
+ * often each policy took the fewest cycles, ties included, so a policy can be picked per kind of block. Run with
+ * "make bench"; another directory of blocks can be given as argument.
+ */
+public class SpillPolicyTournament {
+    private static final int MIN_K = 3;
+    private static final int MAX_K = 16;
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = Reports.blocks(args);
+        String[] policies = SpillPolicy.NAMES;
+        System.out.println(String.format("%-12s %4s %-8s %10s %10s %10s %10s", "block", "k", "policy", "stores", "restores", "insts", "cycles"));
+        long[][] total = new long[policies.length][5]; // stores, restores, insts, cycles, wins
+        for (Path path : files) {
+            if (!Reports.parses(path.toFile())) continue;
+            for (int k = MIN_K; k <= MAX_K; k++) {
+                long[][] current = new long[policies.length][];
+                long fewestCycles = Long.MAX_VALUE;
+                for (int p = 0; p < policies.length; p++) {
+                    current[p] = allocate(path.toFile(), k, policies[p]);
+                    fewestCycles = Math.min(fewestCycles, current[p][3]);
+                }
+                for (int p = 0; p < policies.length; p++) {
+                    System.out.println(String.format("%-12s %4d %-8s %10d %10d %10d %10d", path.getFileName(), k, policies[p],
+                        current[p][0], current[p][1], current[p][2], current[p][3]));
+                    for (int i = 0; i < 4; i++) {
+                        total[p][i] += current[p][i];
+                    }
+                    if (current[p][3] == fewestCycles) total[p][4]++;
+                }
+            }
+        }
+        System.out.println(String.format("%-8s %10s %10s %10s %10s %10s", "policy", "stores", "restores", "insts", "cycles", "wins"));
+        for (int p = 0; p < policies.length; p++) {
+            System.out.println(String.format("%-8s %10d %10d %10d %10d %10d", policies[p],
+                total[p][0], total[p][1], total[p][2], total[p][3], total[p][4]));
+        }
+    }
+
+    /**
+     * @return the stores, restores, instructions and simulated cycles of the block allocated with k registers
+     */
+    private static long[] allocate(File file, int k, String policy) throws IOException {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+        allocator.useSpillPolicy(SpillPolicy.forName(policy));
+        allocator.allocateRegister();
+        IRBlock block = parser.getIR();
+        return new long[] {allocator.getStoreCount(), allocator.getRestoreCount(),
+            Reports.instructions(block), Reports.cycles(file, block)};
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares spill victim selection by scanning PRNU with the NextUseHeap, for k from 3 up to 4096 physical registers.
+ * Every block keeps about twice as many values live as there are registers, so that the allocator keeps spilling.
+ * Run with "make bench".
+ */
+public class VictimBenchmark {
+    private static final int[] KS = {3, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096};
+    private static final int OPERATIONS = 200_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(String.format("%-6s %10s %14s %14s %10s", "k", "spill ops", "scan Mops/s", "heap Mops/s", "speedup"));
+        for (int k : KS) {
+            File file = generate(2 * k);
+            double scan = 0;
+            double heap = 0;
+            for (int round = 0; round < ROUNDS; round++) { // keep the best round
+                scan = Math.max(scan, measure(file, k, false));
+                heap = Math.max(heap, measure(file, k, true));
+            }
+            System.out.println(String.format("%-6d %10d %14.2f %14.2f %10.2f", k, spillOperations, scan, heap, heap / scan));
+            file.delete();
+        }
+    }
+
+    private static int spillOperations;
+
+    /**
+     * @return million operations allocated per second
+     */
+    private static double measure(File file, int k, boolean indexed) {
+        Parser parser = new Parser(file);
+        parser.parse();
+        parser.renameIR();
+        RegisterAllocator allocator = new RegisterAllocator(k, parser.getMaxLive(), parser.getIR(), parser.getMaxVRNumber());
+        allocator.useIndexedVictims(indexed);
+        long start = System.nanoTime();
+        allocator.allocateRegister();
+        long elapsed = System.nanoTime() - start;
+        spillOperations = parser.getIR().getInsertedCode().size();
+        return parser.getIR().size() / (elapsed / 1e3);
+    }
+
+    /**
+     * writes a block that loads values into registers source registers and then combines random pairs of them
+     */
+    private static File generate(int registers) throws IOException {
+        File file = File.createTempFile("victim.", ".i");
+        Random random = new Random(412);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int r = 0; r < registers; r++) {
+                out.println("load r" + r + " => r" + r);
+            }
+            for (int i = registers; i < OPERATIONS - registers; i++) {
+                out.println("add r" + random.nextInt(registers) + ", r" + random.nextInt(registers) + " => r" + random.nextInt(registers));
+            }
+            for (int r = 0; r < registers; r++) {
+                out.println("store r" + r + " => r" + r);
+            }
+        }
+        return file;
+    }
+}
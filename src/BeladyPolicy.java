@@ -0,0 +1,20 @@
+/**
+ * Spills the value with the farthest next use; on a tie, a clean value beats a dirty one, then the lowest PR wins.
+ * This is the default policy, and the one RegisterAllocator can also follow with a NextUseHeap when k is large
+ */
+class BeladyPolicy implements SpillPolicy {
+    @Override
+    public int victim(RegisterAllocator allocator, int op){
+        int x = -1;
+        int farthestNextUse = -1;
+        for (int i = 0; i < allocator.registerCount(); i++){
+            if (allocator.isMarked(i)) continue;
+            int nextUse = allocator.nextUse(i);
+            if (nextUse > farthestNextUse || (nextUse == farthestNextUse && allocator.isClean(i) && !allocator.isClean(x))) {
+                farthestNextUse = nextUse;
+                x = i;
+            }
+        }
+        return x;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Spills the value whose spill costs the fewest cycles per operation until its next use, so a value that is
+ * only a little farther away doesn't win if it needs a store now and a load later while a nearer one is a loadI
+ * to rematerialize. Ties go to the farthest next use and then to the lowest PR
+ */
+class CostWeightedPolicy implements SpillPolicy {
+    @Override
+    public int victim(RegisterAllocator allocator, int op){
+        int x = -1;
+        long bestCost = 0;
+        long bestDistance = 0;
+        for (int i = 0; i < allocator.registerCount(); i++){
+            if (allocator.isMarked(i)) continue;
+            long cost = allocator.spillCost(i);
+            long distance = (long) allocator.nextUse(i) - op;
+            // cost / distance < bestCost / bestDistance, without dividing
+            long difference = cost * bestDistance - bestCost * distance;
+            if (x == -1 || difference < 0 || (difference == 0 && allocator.nextUse(i) > allocator.nextUse(x))) {
+                x = i;
+                bestCost = cost;
+                bestDistance = distance;
+            }
+        }
+        return x;
+    }
+    @Override
+    public boolean needsCurrentNextUse(){
+        return true;
+    }
+}
@@ -0,0 +1,500 @@
+import java.util.Arrays;
+
+import IntermediateRepresentation.IRBlock;
+import Token.Opcode;
+
+/**
+ * Global register allocator in the style of Chaitin and Briggs, an alternative to the local RegisterAllocator.
+ * The block is cut where no value is live, since no live range crosses such a point, and every region is colored on
+ * its own. The live ranges of a region come from the definitions and NU chains that renaming computed, and its
+ * interference graph is kept as adjacency lists, so that it grows with the edges rather than with the square of the
+ * live ranges: a live range only meets the few values live where it starts.
+ *
+ * A spilled VR is split into a tiny live range per reference: a restore right before each use and, unless its value
+ * comes from a loadI and is rematerialized instead, a store right after its definition. The graph is then built and
+ * colored again, until every live range gets one of the k - 1 registers besides the one reserved for spill
+ * addresses. A region that needs no spill is colored with all k registers. Spill slots start at 32768 in every region.
+ */
+public class GraphColoringAllocator {
+    /** address of the first spill slot */
+    private static final int FIRST_SPILL_ADDR = 32768;
+    /** static latency weights of the spill code, a memory operation counting 3 and a loadI 1 */
+    private static final int LOADI_CYCLES = 1;
+    private static final int MEMORY_CYCLES = 3;
+    /** a node that can't be spilled, because it already is a piece of a spilled VR or it has no use */
+    private static final double UNSPILLABLE = Double.MAX_VALUE;
+
+    private final int registers;
+    private final IRBlock block;
+    /** the operations [start, end) are allocated */
+    private final int start;
+    private final int end;
+    /** the VRs of the region are firstVR..firstVR + vrCount - 1; the VR tables are indexed by VR - firstVR */
+    private final int firstVR;
+    private final int vrCount;
+    private final int maxLive;
+    /** number of colors, and the register for spill addresses, -1 if there is none */
+    private int colors;
+    private int reservedRegister;
+    private int reservedAddress;
+
+    // per VR of the region
+    private final boolean[] spilled;
+    private final boolean[] liveIn; // used before any definition in the region
+    private final int[] uses;
+    private final boolean[] rematerializable;
+    private final int[] constant; // the constant of the loadI that defines a rematerializable VR
+    /** the spill slot of each spilled VR, 0 while it has none; slots of dead VRs are reused, the last freed first */
+    private int[] spillSlot;
+    private int nextSlot;
+    private int[] freeSlots;
+    private int freeSlotCount;
+
+    // the graph of the current round: nodes 0..vrCount-1 are the VRs, then one node per reference of a spilled VR
+    private int nodeCount;
+    private int[] referenceNode; // referenceNode[3 * (op - start) + slot] is the node of that operand
+    private int[] nodeVR; // the VR each node is a live range of
+    /** the neighbors of node v are neighbors[firstNeighbor[v] .. firstNeighbor[v + 1]) */
+    private int[] firstNeighbor;
+    private int[] neighbors;
+    // the edges of the current round as they are found, before they are sorted into the lists
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int edgeCount;
+    // the nodes live at the current operation of build(), and the position of each one in liveNodes, -1 if it isn't live
+    private int[] liveNodes;
+    private int liveCount;
+    private int[] livePosition;
+    private int[] color;
+    /** the spill candidates of simplifyAndSelect(), a min-heap by the cost per neighbor each one had when it was pushed */
+    private int[] candidates;
+    private int candidateCount;
+    private double[] candidateKey;
+
+    private GraphColoringAllocator(int k, IRBlock block, int start, int end, int firstVR, int maxVRNumber, int maxLive){
+        this.registers = k;
+        this.block = block;
+        this.start = start;
+        this.end = end;
+        this.firstVR = firstVR;
+        this.vrCount = maxVRNumber - firstVR + 1;
+        this.maxLive = maxLive;
+        this.spilled = new boolean[this.vrCount];
+        this.liveIn = new boolean[this.vrCount];
+        this.uses = new int[this.vrCount];
+        this.rematerializable = new boolean[this.vrCount];
+        this.constant = new int[this.vrCount];
+        boolean[] defined = new boolean[this.vrCount];
+        for (int op = start; op < end; op++) {
+            int useCount = block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int vr = block.getVR(op, block.use(op, i)) - firstVR;
+                this.uses[vr]++;
+                if (!defined[vr]) this.liveIn[vr] = true;
+            }
+            int definedSlot = block.def(op);
+            if (definedSlot != -1) {
+                int vr = block.getVR(op, definedSlot) - firstVR;
+                defined[vr] = true;
+                if (block.getOpCode(op) == Opcode.loadI) {
+                    this.rematerializable[vr] = true;
+                    this.constant[vr] = block.getSR(op, IRBlock.OP1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Colors the renamed block region by region, inserting its spill code. A region whose interference graph
+     * could outgrow the heap once its VRs are split, or that can't be colored with k registers at all, is allocated
+     * by RegisterAllocator
+     * @return the number of regions allocated by RegisterAllocator
+     */
+    public static int allocate(int k, Options options, IRBlock block){
+        int fallbacks = 0;
+        int regionStart = 0;
+        for (int op = 1; op <= block.size(); op++) {
+            if (op < block.size() && block.getLive(op) != 0) continue;
+            GraphColoringAllocator allocator = forRegion(k, block, regionStart, op);
+            if (allocator == null || !allocator.color()) {
+                IRBlock region = block.region(regionStart);
+                RegisterAllocator.allocateRegion(k, options, region, regionStart, op);
+                block.mergeInsertedCode(region);
+                fallbacks++;
+            } else {
+                allocator.insertSpillCode();
+            }
+            regionStart = op;
+        }
+        return fallbacks;
+    }
+    /**
+     * @return the allocator of the region [start, end), or null if its graph could outgrow the heap once VRs are split
+     */
+    private static GraphColoringAllocator forRegion(int k, IRBlock block, int start, int end){
+        int maxLive = 0;
+        long references = 0;
+        int firstVR = Integer.MAX_VALUE;
+        int maxVRNumber = -1;
+        for (int op = start; op < end; op++) {
+            maxLive = Math.max(maxLive, block.getLive(op));
+            for (int slot = IRBlock.OP1; slot <= IRBlock.OP3; slot++) {
+                if (!block.hasOperand(op, slot) || !block.isRegister(op, slot)) continue;
+                references++;
+                firstVR = Math.min(firstVR, block.getVR(op, slot));
+                maxVRNumber = Math.max(maxVRNumber, block.getVR(op, slot));
+            }
+        }
+        if (maxVRNumber == -1) firstVR = 0;
+        // every reference may become a node, which starts next to at most maxLive others and the operands of its operation
+        long nodes = maxVRNumber - firstVR + 1 + references;
+        if (!fits(nodes, nodes * (maxLive + 2))) return null;
+        return new GraphColoringAllocator(k, block, start, end, firstVR, maxVRNumber, maxLive);
+    }
+    /**
+     * @return whether a graph of nodes nodes and edges edges, with the tables of its nodes, takes at most a quarter of the heap
+     */
+    private static boolean fits(long nodes, long edges){
+        return (16 * nodes + 4 * edges) * Integer.BYTES <= Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Builds and colors the graph until nothing more has to be spilled; spills are first tried without a reserved register
+     * @return false if the region can't be colored, e.g. because an operation reads more registers than there are colors
+     */
+    private boolean color(){
+        boolean reserve = this.registers < this.maxLive;
+        while (true) {
+            this.colors = reserve ? this.registers - 1 : this.registers;
+            this.reservedRegister = reserve ? this.registers - 1 : -1;
+            if (this.colors < 1) return false;
+            build();
+            int spills = simplifyAndSelect();
+            if (spills == -1) return false;
+            if (spills == 0) return true;
+            if (!reserve) {
+                // spill code needs a register for its addresses, so start over with one
+                reserve = true;
+                Arrays.fill(this.spilled, false);
+            }
+        }
+    }
+
+    /**
+     * numbers the nodes of the current round and builds their interference graph, walking the region forward.
+     * Every node meets the nodes live where it starts, once, so no edge is found twice
+     */
+    private void build(){
+        int operands = 3 * (this.end - this.start);
+        if (this.referenceNode == null) {
+            this.referenceNode = new int[operands];
+            this.nodeVR = new int[this.vrCount + operands];
+            for (int vr = 0; vr < this.vrCount; vr++) {
+                this.nodeVR[vr] = vr;
+            }
+            this.livePosition = new int[this.vrCount + operands];
+            this.liveNodes = new int[this.vrCount + operands];
+            this.edgeFrom = new int[Math.max(16, operands)];
+            this.edgeTo = new int[this.edgeFrom.length];
+        }
+        this.nodeCount = this.vrCount;
+        for (int op = this.start; op < this.end; op++) {
+            int base = 3 * (op - this.start);
+            for (int slot = IRBlock.OP1; slot <= IRBlock.OP3; slot++) {
+                if (!this.block.hasOperand(op, slot) || !this.block.isRegister(op, slot)) continue;
+                int vr = this.block.getVR(op, slot) - this.firstVR;
+                if (!this.spilled[vr]) {
+                    this.referenceNode[base + slot] = vr;
+                } else if (slot == IRBlock.OP2 && this.block.getVR(op, IRBlock.OP1) - this.firstVR == vr) {
+                    // both operands are the same VR, which is restored once
+                    this.referenceNode[base + slot] = this.referenceNode[base + IRBlock.OP1];
+                } else {
+                    this.nodeVR[this.nodeCount] = vr;
+                    this.referenceNode[base + slot] = this.nodeCount++;
+                }
+            }
+        }
+        this.edgeCount = 0;
+        this.liveCount = 0;
+        Arrays.fill(this.livePosition, 0, this.nodeCount, -1);
+        for (int vr = 0; vr < this.vrCount; vr++) {
+            if (this.liveIn[vr] && !this.spilled[vr]) {
+                interfere(vr);
+                makeLive(vr);
+            }
+        }
+        for (int op = this.start; op < this.end; op++) {
+            int base = 3 * (op - this.start);
+            int useCount = this.block.useCount(op);
+            // restored operands become live right before op
+            for (int i = 0; i < useCount; i++) {
+                int node = this.referenceNode[base + this.block.use(op, i)];
+                if (node >= this.vrCount && this.livePosition[node] == -1) {
+                    interfere(node);
+                    makeLive(node);
+                }
+            }
+            // operands that die at op free their register for its definition
+            for (int i = 0; i < useCount; i++) {
+                int slot = this.block.use(op, i);
+                int node = this.referenceNode[base + slot];
+                if (node >= this.vrCount || this.block.getNU(op, slot) == Integer.MAX_VALUE) kill(node);
+            }
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1) {
+                int node = this.referenceNode[base + definedSlot];
+                interfere(node);
+                // a stored definition dies at its store, right after op
+                if (node < this.vrCount && this.block.getNU(op, definedSlot) != Integer.MAX_VALUE) makeLive(node);
+            }
+        }
+
+        // sort the edges into the lists of both their nodes
+        this.firstNeighbor = new int[this.nodeCount + 1];
+        for (int e = 0; e < this.edgeCount; e++) {
+            this.firstNeighbor[this.edgeFrom[e] + 1]++;
+            this.firstNeighbor[this.edgeTo[e] + 1]++;
+        }
+        for (int node = 0; node < this.nodeCount; node++) {
+            this.firstNeighbor[node + 1] += this.firstNeighbor[node];
+        }
+        this.neighbors = new int[2 * this.edgeCount];
+        int[] filled = Arrays.copyOf(this.firstNeighbor, this.nodeCount);
+        for (int e = 0; e < this.edgeCount; e++) {
+            this.neighbors[filled[this.edgeFrom[e]]++] = this.edgeTo[e];
+            this.neighbors[filled[this.edgeTo[e]]++] = this.edgeFrom[e];
+        }
+    }
+    /**
+     * adds the edges between node and every live node
+     */
+    private void interfere(int node){
+        if (this.edgeCount + this.liveCount > this.edgeFrom.length) {
+            this.edgeFrom = Arrays.copyOf(this.edgeFrom, Math.max(this.edgeCount + this.liveCount, 2 * this.edgeFrom.length));
+            this.edgeTo = Arrays.copyOf(this.edgeTo, this.edgeFrom.length);
+        }
+        for (int i = 0; i < this.liveCount; i++) {
+            this.edgeFrom[this.edgeCount] = node;
+            this.edgeTo[this.edgeCount++] = this.liveNodes[i];
+        }
+    }
+    private void makeLive(int node){
+        this.livePosition[node] = this.liveCount;
+        this.liveNodes[this.liveCount++] = node;
+    }
+    private void kill(int node){
+        int position = this.livePosition[node];
+        if (position == -1) return;
+        int last = this.liveNodes[--this.liveCount];
+        this.liveNodes[position] = last;
+        this.livePosition[last] = position;
+        this.livePosition[node] = -1;
+    }
+    private int degree(int node){
+        return this.firstNeighbor[node + 1] - this.firstNeighbor[node];
+    }
+
+    /**
+     * Removes nodes of fewer than colors neighbors onto a stack, and when there are none, the node of the cheapest
+     * spill per neighbor, optimistically. Popping the stack gives every node a color its colored neighbors don't have,
+     * for the pieces of a spilled VR the color of another piece if it can, so that insertSpillCode() can skip restores;
+     * the VRs of the nodes left without one are spilled
+     * @return the number of VRs spilled, or -1 if a node that can't be spilled got no color
+     */
+    private int simplifyAndSelect(){
+        int[] remaining = new int[this.nodeCount];
+        for (int node = 0; node < this.nodeCount; node++) {
+            remaining[node] = degree(node);
+        }
+        boolean[] removed = new boolean[this.nodeCount];
+        int[] stack = new int[this.nodeCount];
+        int stackSize = 0;
+        int[] lowDegree = new int[this.nodeCount];
+        int lowCount = 0;
+        double[] cost = spillCosts();
+        this.candidates = new int[this.nodeCount];
+        this.candidateCount = 0;
+        this.candidateKey = new double[this.nodeCount];
+        for (int node = 0; node < this.nodeCount; node++) {
+            if (remaining[node] < this.colors) lowDegree[lowCount++] = node;
+            this.candidateKey[node] = perNeighbor(cost[node], remaining[node]);
+            pushCandidate(node);
+        }
+        while (stackSize < this.nodeCount) {
+            int node = -1;
+            while (lowCount > 0 && node == -1) {
+                int candidate = lowDegree[--lowCount];
+                if (!removed[candidate]) node = candidate;
+            }
+            if (node == -1) {
+                // every node left has colors neighbors or more, so one of them may not get a color. Keys only grow as
+                // neighbors are removed, so a candidate whose key is still current is the cheapest one
+                while (node == -1) {
+                    int candidate = popCandidate();
+                    if (removed[candidate]) continue;
+                    double key = perNeighbor(cost[candidate], remaining[candidate]);
+                    if (key > this.candidateKey[candidate]) {
+                        this.candidateKey[candidate] = key;
+                        pushCandidate(candidate);
+                    } else {
+                        node = candidate;
+                    }
+                }
+            }
+            removed[node] = true;
+            stack[stackSize++] = node;
+            for (int n = this.firstNeighbor[node]; n < this.firstNeighbor[node + 1]; n++) {
+                int other = this.neighbors[n];
+                if (!removed[other] && --remaining[other] == this.colors - 1) lowDegree[lowCount++] = other;
+            }
+        }
+
+        this.color = new int[this.nodeCount];
+        Arrays.fill(this.color, -1);
+        int[] taken = new int[this.colors]; // taken[c] == node + 1 when a neighbor of node has color c
+        int[] vrColor = new int[this.vrCount]; // the last color given to a piece of each VR
+        Arrays.fill(vrColor, -1);
+        int spills = 0;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            for (int n = this.firstNeighbor[node]; n < this.firstNeighbor[node + 1]; n++) {
+                int other = this.neighbors[n];
+                if (this.color[other] != -1) taken[this.color[other]] = node + 1;
+            }
+            int vr = this.nodeVR[node];
+            if (vrColor[vr] != -1 && taken[vrColor[vr]] != node + 1) this.color[node] = vrColor[vr];
+            for (int c = 0; c < this.colors && this.color[node] == -1; c++) {
+                if (taken[c] != node + 1) this.color[node] = c;
+            }
+            if (this.color[node] != -1) {
+                vrColor[vr] = this.color[node];
+                continue;
+            }
+            if (cost[node] == UNSPILLABLE) return -1;
+            this.spilled[node] = true;
+            spills++;
+        }
+        return spills;
+    }
+    private static double perNeighbor(double cost, int neighbors){
+        return cost == UNSPILLABLE ? UNSPILLABLE : cost / neighbors;
+    }
+    /**
+     * @return whether candidate a comes before b: by key, then by node
+     */
+    private boolean before(int a, int b){
+        return this.candidateKey[a] < this.candidateKey[b] || this.candidateKey[a] == this.candidateKey[b] && a < b;
+    }
+    private void pushCandidate(int node){
+        int position = this.candidateCount++;
+        while (position > 0 && before(node, this.candidates[(position - 1) / 2])) {
+            this.candidates[position] = this.candidates[(position - 1) / 2];
+            position = (position - 1) / 2;
+        }
+        this.candidates[position] = node;
+    }
+    private int popCandidate(){
+        int top = this.candidates[0];
+        int last = this.candidates[--this.candidateCount];
+        int position = 0;
+        while (2 * position + 1 < this.candidateCount) {
+            int child = 2 * position + 1;
+            if (child + 1 < this.candidateCount && before(this.candidates[child + 1], this.candidates[child])) child++;
+            if (!before(this.candidates[child], last)) break;
+            this.candidates[position] = this.candidates[child];
+            position = child;
+        }
+        this.candidates[position] = last;
+        return top;
+    }
+
+    /**
+     * @return the cycles the spill code of each node would add: a loadI per use for a rematerializable VR, else a store
+     *         after the definition and a load per use, each with the loadI of its address
+     */
+    private double[] spillCosts(){
+        double[] cost = new double[this.nodeCount];
+        Arrays.fill(cost, UNSPILLABLE);
+        for (int vr = 0; vr < this.vrCount; vr++) {
+            if (this.spilled[vr] || this.uses[vr] == 0) continue;
+            cost[vr] = this.rematerializable[vr] ? this.uses[vr] * LOADI_CYCLES : (this.uses[vr] + 1) * (LOADI_CYCLES + MEMORY_CYCLES);
+        }
+        return cost;
+    }
+
+    /**
+     * Writes the colors into the PRs of the region and inserts the restores and stores of the spilled VRs.
+     * A restore is left out when its register still holds the VR, from its definition or an earlier restore.
+     * Slots are handed out at the stores, so the one a restore just loaded from is often stored to next
+     */
+    private void insertSpillCode(){
+        this.reservedAddress = -1;
+        int[] holds = new int[this.registers]; // the VR each register holds, -1 if none
+        Arrays.fill(holds, -1);
+        this.spillSlot = new int[this.vrCount];
+        this.nextSlot = FIRST_SPILL_ADDR;
+        this.freeSlots = new int[this.vrCount];
+        this.freeSlotCount = 0;
+        for (int op = this.start; op < this.end; op++) {
+            int base = 3 * (op - this.start);
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int slot = this.block.use(op, i);
+                int node = this.referenceNode[base + slot];
+                int pr = this.color[node];
+                this.block.setPR(op, slot, pr);
+                int vr = this.block.getVR(op, slot) - this.firstVR;
+                if (node < this.vrCount || holds[pr] == vr) continue;
+                holds[pr] = vr;
+                if (this.rematerializable[vr]) {
+                    this.block.insertBefore(op, Opcode.loadI, this.constant[vr], -1, pr);
+                } else {
+                    loadAddress(slotOf(vr), op);
+                    this.block.insertBefore(op, Opcode.load, -1, this.reservedRegister, pr);
+                }
+            }
+            for (int i = 0; i < useCount; i++) {
+                int slot = this.block.use(op, i);
+                int vr = this.block.getVR(op, slot) - this.firstVR;
+                if (this.block.getNU(op, slot) == Integer.MAX_VALUE && this.spillSlot[vr] != 0) {
+                    this.freeSlots[this.freeSlotCount++] = this.spillSlot[vr];
+                    this.spillSlot[vr] = 0;
+                }
+            }
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1) {
+                int node = this.referenceNode[base + definedSlot];
+                int pr = this.color[node];
+                this.block.setPR(op, definedSlot, pr);
+                int vr = this.block.getVR(op, definedSlot) - this.firstVR;
+                holds[pr] = vr;
+                if (node >= this.vrCount && !this.rematerializable[vr]) {
+                    loadAddress(slotOf(vr), op + 1);
+                    this.block.insertBefore(op + 1, Opcode.store, -1, pr, this.reservedRegister);
+                }
+            }
+        }
+    }
+    /**
+     * @return the spill slot of vr, which gets one if it has none yet
+     */
+    private int slotOf(int vr){
+        if (this.spillSlot[vr] == 0) {
+            if (this.freeSlotCount > 0) {
+                this.spillSlot[vr] = this.freeSlots[--this.freeSlotCount];
+            } else {
+                this.spillSlot[vr] = this.nextSlot;
+                this.nextSlot += 4;
+            }
+        }
+        return this.spillSlot[vr];
+    }
+    /**
+     * inserts a loadI of a spill address into the reserved register before op, unless it already holds the address
+     */
+    private void loadAddress(int address, int op){
+        if (address == this.reservedAddress) return;
+        this.block.insertBefore(op, Opcode.loadI, address, -1, this.reservedRegister);
+        this.reservedAddress = address;
+    }
+}
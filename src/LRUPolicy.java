@@ -0,0 +1,18 @@
+/**
+ * Spills the value that was used or defined the longest time ago, without looking ahead at next uses;
+ * on a tie, a clean value beats a dirty one, then the lowest PR wins
+ */
+class LRUPolicy implements SpillPolicy {
+    @Override
+    public int victim(RegisterAllocator allocator, int op){
+        int x = -1;
+        for (int i = 0; i < allocator.registerCount(); i++){
+            if (allocator.isMarked(i)) continue;
+            if (x == -1 || allocator.lastUse(i) < allocator.lastUse(x)
+                || (allocator.lastUse(i) == allocator.lastUse(x) && allocator.isClean(i) && !allocator.isClean(x))) {
+                x = i;
+            }
+        }
+        return x;
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.Arrays;
+
+import IntermediateRepresentation.IRBlock;
+import Token.Opcode;
+
+/**
+ * Linear-scan register allocator in the style of Poletto and Sarkar, for blocks too large to spend time on the last
+ * spill. The live interval of a VR runs from its definition, or from before the block if it is used undefined, to its
+ * last use, the operand whose NU is Integer.MAX_VALUE. Walking the definitions in order, intervals that ended are
+ * expired from the active set, which is sorted by end, and when no register is free the interval that ends last is
+ * spilled: it lives in memory for all of its interval.
+ *
+ * When something is spilled, two registers are kept as scratch registers for the spill code, so an interval
+ * gets one of k - 2 registers. A spilled operand is restored into a scratch register before its use, through its own
+ * address, unless a scratch register still holds it; a spilled definition is written into the first scratch register
+ * and stored right after, through the other one. Values from a loadI are rematerialized instead of stored.
+ * A definition that is never used evicts nothing: it goes to a register that is free where it is defined, or else to
+ * the first scratch register.
+ */
+public class LinearScanAllocator {
+    /** address of the first spill slot */
+    private static final int FIRST_SPILL_ADDR = 32768;
+
+    private final int registers;
+    private final int maxLive;
+    private final IRBlock block;
+    /** the interval of each VR ends at this operation */
+    private final int[] end;
+    /** the number of uses of each VR */
+    private final int[] uses;
+    /** whether each VR is used before it is defined, so that its interval starts before the block */
+    private final boolean[] liveIn;
+    /** the PR of each VR, -1 if it is spilled */
+    private final int[] VRToPR;
+    /** the scratch registers, -1 if nothing is spilled */
+    private final int[] scratch = new int[2];
+    /** whether some definition that is never used finds every one of the k registers live across it */
+    private boolean crowdedDeadDefinition;
+
+    /** the active intervals, sorted by decreasing end; the last one ends first */
+    private int[] active;
+    private int activeCount;
+    private int[] freePRs;
+    private int freePRCount;
+    private int spillCount;
+
+    /** the spill slot of each spilled VR, 0 while it has none; slots of dead VRs are reused, the last freed first */
+    private int[] spillSlot;
+    private int nextSlot;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int storeCount;
+    private int restoreCount;
+
+    public LinearScanAllocator(int k, int maxLive, IRBlock block, int maxVRNumber){
+        this.registers = k;
+        this.maxLive = maxLive;
+        this.block = block;
+        this.end = new int[maxVRNumber + 1];
+        this.uses = new int[maxVRNumber + 1];
+        this.liveIn = new boolean[maxVRNumber + 1];
+        this.VRToPR = new int[maxVRNumber + 1];
+        boolean[] defined = new boolean[maxVRNumber + 1];
+        for (int op = 0; op < block.size(); op++) {
+            int useCount = block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int slot = block.use(op, i);
+                int vr = block.getVR(op, slot);
+                this.uses[vr]++;
+                if (!defined[vr]) this.liveIn[vr] = true;
+                if (block.getNU(op, slot) == Integer.MAX_VALUE) this.end[vr] = op;
+            }
+            int definedSlot = block.def(op);
+            if (definedSlot != -1) {
+                int vr = block.getVR(op, definedSlot);
+                defined[vr] = true;
+                // a value that is never used ends where it is defined
+                if (block.getNU(op, definedSlot) == Integer.MAX_VALUE) {
+                    this.end[vr] = op;
+                    if (op + 1 < block.size() && block.getLive(op + 1) >= k) this.crowdedDeadDefinition = true;
+                }
+            }
+        }
+    }
+    int getSpillCount(){
+        return this.spillCount;
+    }
+    int getStoreCount(){
+        return this.storeCount;
+    }
+    int getRestoreCount(){
+        return this.restoreCount;
+    }
+
+    /**
+     * Allocates the block in place. The scratch registers are only set aside when maxlive is larger than k, or when
+     * a definition that is never used has no free register to go to
+     */
+    public void allocateRegister(){
+        assignRegisters(this.registers < this.maxLive || this.crowdedDeadDefinition);
+        insertSpillCode();
+    }
+
+    /**
+     * walks the intervals in order of their start and gives each one a PR or spills it
+     */
+    private void assignRegisters(boolean reserve){
+        int k = reserve ? this.registers - 2 : this.registers;
+        this.scratch[0] = reserve ? k : -1;
+        this.scratch[1] = reserve ? k + 1 : -1;
+        this.active = new int[k];
+        this.activeCount = 0;
+        this.freePRs = new int[k];
+        this.freePRCount = 0;
+        this.spillCount = 0;
+        for (int pr = k - 1; pr >= 0; pr--) {
+            this.freePRs[this.freePRCount++] = pr;
+        }
+        for (int vr = 0; vr < this.liveIn.length; vr++) {
+            if (this.liveIn[vr]) allocateInterval(vr, -1);
+        }
+        for (int op = 0; op < this.block.size(); op++) {
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1) allocateInterval(this.block.getVR(op, definedSlot), op);
+        }
+    }
+    /**
+     * gives the interval of vr, which starts at operation start, a PR: a free one, or the one of the active interval
+     * that ends last if that one ends after vr; otherwise vr is spilled
+     */
+    private void allocateInterval(int vr, int start){
+        // intervals that end at start are read by the operation that defines vr, so their PR can be reused
+        while (this.activeCount > 0 && this.end[this.active[this.activeCount - 1]] <= start) {
+            this.freePRs[this.freePRCount++] = this.VRToPR[this.active[--this.activeCount]];
+        }
+        if (this.end[vr] == start) {
+            // nothing reads vr, so it takes a free PR without keeping it, or else the first scratch register
+            this.VRToPR[vr] = this.freePRCount > 0 ? this.freePRs[this.freePRCount - 1] : -1;
+            return;
+        }
+        if (this.freePRCount > 0) {
+            this.VRToPR[vr] = this.freePRs[--this.freePRCount];
+        } else if (this.end[this.active[0]] > this.end[vr]) {
+            int spilled = this.active[0];
+            this.VRToPR[vr] = this.VRToPR[spilled];
+            this.VRToPR[spilled] = -1;
+            this.spillCount++;
+            System.arraycopy(this.active, 1, this.active, 0, --this.activeCount);
+        } else {
+            this.VRToPR[vr] = -1;
+            this.spillCount++;
+            return;
+        }
+        // insert vr into the active set, after the intervals that end later
+        int position = this.activeCount;
+        while (position > 0 && this.end[this.active[position - 1]] < this.end[vr]) {
+            position--;
+        }
+        System.arraycopy(this.active, position, this.active, position + 1, this.activeCount - position);
+        this.active[position] = vr;
+        this.activeCount++;
+    }
+
+    /**
+     * writes the PRs into the block and inserts the restores and stores of the spilled VRs
+     */
+    private void insertSpillCode(){
+        this.spillSlot = new int[this.VRToPR.length];
+        this.nextSlot = FIRST_SPILL_ADDR;
+        this.freeSlots = new int[16];
+        this.freeSlotCount = 0;
+        // at most a loadI and a load per use of a spilled VR, and a loadI and a store after its definition
+        long spillCode = 0;
+        for (int vr = 0; vr < this.VRToPR.length; vr++) {
+            if (this.VRToPR[vr] == -1) spillCode += 2L * this.uses[vr] + 2;
+        }
+        if (spillCode > 0) this.block.reserveInsertedCode((int) Math.min(spillCode, Integer.MAX_VALUE - 8));
+        int[] constant = new int[this.VRToPR.length];
+        boolean[] rematerializable = new boolean[this.VRToPR.length];
+        int[] holds = {-1, -1}; // the VR each scratch register holds, -1 if none
+        for (int op = 0; op < this.block.size(); op++) {
+            int useCount = this.block.useCount(op);
+            int claimed = -1; // the scratch register the first operand uses
+            for (int i = 0; i < useCount; i++) {
+                int slot = this.block.use(op, i);
+                int vr = this.block.getVR(op, slot);
+                if (this.VRToPR[vr] != -1) {
+                    this.block.setPR(op, slot, this.VRToPR[vr]);
+                    continue;
+                }
+                int j = holds[0] == vr ? 0 : holds[1] == vr ? 1 : -1;
+                boolean restored = j != -1 && (j != claimed || i == 0 || this.block.getVR(op, this.block.use(op, 0)) == vr);
+                if (!restored) j = claimed == 0 ? 1 : 0;
+                claimed = j;
+                int pr = this.scratch[j];
+                this.block.setPR(op, slot, pr);
+                if (restored) continue;
+                holds[j] = vr;
+                if (rematerializable[vr]) {
+                    this.block.insertBefore(op, Opcode.loadI, constant[vr], -1, pr);
+                } else {
+                    this.block.insertBefore(op, Opcode.loadI, slotOf(vr), -1, pr);
+                    this.block.insertBefore(op, Opcode.load, -1, pr, pr);
+                }
+                this.restoreCount++;
+            }
+            for (int i = 0; i < useCount; i++) {
+                int slot = this.block.use(op, i);
+                int vr = this.block.getVR(op, slot);
+                if (this.block.getNU(op, slot) == Integer.MAX_VALUE && this.spillSlot[vr] != 0) {
+                    if (this.freeSlotCount == this.freeSlots.length) this.freeSlots = Arrays.copyOf(this.freeSlots, 2 * this.freeSlotCount);
+                    this.freeSlots[this.freeSlotCount++] = this.spillSlot[vr];
+                    this.spillSlot[vr] = 0;
+                }
+            }
+            int definedSlot = this.block.def(op);
+            if (definedSlot == -1) continue;
+            int vr = this.block.getVR(op, definedSlot);
+            if (this.VRToPR[vr] != -1) {
+                this.block.setPR(op, definedSlot, this.VRToPR[vr]);
+                continue;
+            }
+            this.block.setPR(op, definedSlot, this.scratch[0]);
+            holds[0] = vr;
+            if (this.block.getOpCode(op) == Opcode.loadI) {
+                rematerializable[vr] = true;
+                constant[vr] = this.block.getSR(op, IRBlock.OP1);
+            } else if (this.block.getNU(op, definedSlot) != Integer.MAX_VALUE) {
+                this.block.insertBefore(op + 1, Opcode.loadI, slotOf(vr), -1, this.scratch[1]);
+                this.block.insertBefore(op + 1, Opcode.store, -1, this.scratch[0], this.scratch[1]);
+                holds[1] = -1;
+                this.storeCount++;
+            }
+        }
+    }
+    /**
+     * @return the spill slot of vr, which gets one if it has none yet
+     */
+    private int slotOf(int vr){
+        if (this.spillSlot[vr] == 0) {
+            if (this.freeSlotCount > 0) {
+                this.spillSlot[vr] = this.freeSlots[--this.freeSlotCount];
+            } else {
+                this.spillSlot[vr] = this.nextSlot;
+                this.nextSlot += 4;
+            }
+        }
+        return this.spillSlot[vr];
+    }
+}
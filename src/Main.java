@@ -1,34 +1,44 @@
 import java.io.File;
+import java.util.Arrays;
 
 public class Main {
     public static void main(String[] args) {
 
-        for (int i = 0; i < args.length; i++){
-            //System.out.println(String.format("args[%d]: %s", i, args[i]));
+        // optional "--" flags come before the usual arguments
+        Options options = new Options();
+        int firstArg = 0;
+        while (firstArg < args.length && args[firstArg].startsWith("--")){
+            if (!options.set(args[firstArg])){
+                System.err.println("Unknown option: " + args[firstArg]);
+                printCommandDescription();
+                return;
+            }
+            firstArg++;
         }
+        args = Arrays.copyOfRange(args, firstArg, args.length);
 
         if (args.length == 1){ //either only have -h flag or only have file path
             if (args[0].equals("-h")){
                 printCommandDescription();
             } else {
-                scanParseFile(args[0], false, false, false, false, -1);
+                scanParseFile(args[0], false, false, false, false, -1, options);
             }
         } else if (args.length == 2){
             try {
                 int k = Integer.parseInt(args[0]);
                 String filePath = args[1];
-                scanParseFile(filePath, false, false, false, true, k);
+                scanParseFile(filePath, false, false, false, true, k, options);
             } catch (NumberFormatException e) {
                 String flag = args[0];
                 String filePath = args[1];
                 if (flag.equals("-s")){
-                    scanParseFile(filePath, true, false, false, false, -1);
+                    scanParseFile(filePath, true, false, false, false, -1, options);
                 } else if (flag.equals("-p")){
-                    scanParseFile(filePath, false, false, false, false, -1);//doesn't print IR
+                    scanParseFile(filePath, false, false, false, false, -1, options);//doesn't print IR
                 } else if (flag.equals("-r")){
-                    scanParseFile(filePath, false, true, false, false, -1);
+                    scanParseFile(filePath, false, true, false, false, -1, options);
                 } else if (flag.equals("-x")){
-                    scanParseFile(filePath, false, false, true, false, -1);
+                    scanParseFile(filePath, false, false, true, false, -1, options);
                 } 
             }
             
@@ -50,22 +60,23 @@ public class Main {
      * @param printVR boolean value representing whether we want to print ILOC block with VR values (after renaming and register allocation)
      * @param printPR boolean value representing whether we want to print ILOC block with PR values (after renaming and register allocation)
      * @param k
+     * @param options optional modes selected with "--" flags
      */
-    private static void scanParseFile(String filePath, boolean onlyScan, boolean printIR, boolean printVR, boolean printPR, int k){
+    private static void scanParseFile(String filePath, boolean onlyScan, boolean printIR, boolean printVR, boolean printPR, int k, Options options){
         File toBeParsedFile = new File(filePath);
         if (toBeParsedFile.exists()){
             if (!onlyScan){
-                Parser parser = new Parser(toBeParsedFile);
+                Parser parser = new Parser(toBeParsedFile, options);
                 if (printIR){
                     parser.parseAndPrintIR();
                 } else if (printVR || printPR){
                     //TODO: including k as a parameter might not be a good design
                     parser.parseRenameAndPrintILOC(printVR, printPR, k);
                 } else {
-                    parser.parse();
+                    parser.validate();
                 }
             } else {
-                Scanner scanner = new Scanner(toBeParsedFile);
+                Scanner scanner = new Scanner(toBeParsedFile, options);
                 scanner.scanEntireFile();
             }
             
@@ -85,6 +96,19 @@ public class Main {
         System.out.println("  -r <filename>\t Read the specified file, scan it, parse it, and print the intermediate representation.");
         System.out.println("  -x <filename>\t scans and parse the input block. It should then perform renaming the code in the input block and print the results to the standard output stream.");
         System.out.println("  <int k> <filename>\t  scans and parse the input block. It should then perform renaming, then allocating with the inputted integer representing the number of reserved registers. It then prints the results of the register allocation to the standard output stream.");
+        System.out.println("  <filename> may also name a gzip-compressed block (e.g. block.i.gz); it is decompressed while it is scanned.");
+        System.out.println("  Options (placed before the arguments above):");
+        System.out.println("  --vector\t Skip whitespace and find line ends with SIMD instructions (needs --add-modules jdk.incubator.vector, falls back to scalar code).");
+        System.out.println("  --parallel\t Scan, parse, rename and allocate chunks of a large input block on several threads.");
+        System.out.println("  --threads=<n>\t Number of threads used by the parallel modes (default: number of processors).");
+        System.out.println("  --heap-budget=<MB>\t Keep at most <MB> megabytes of IR in the heap and spool the rest to a memory-mapped temp file. Only the operations and spill code are spooled; the renamer's and allocators' per-register tables stay in the heap.");
+        System.out.println("  --spill-policy=<name>\t Choose spill victims by farthest next use (belady, the default), least recent use (lru), spill and restore cycles per operation until the next use (cost), or loadI values first (remat).");
+        System.out.println("  --spill-cost\t Same as --spill-policy=cost.");
+        System.out.println("  --no-reserve\t Don't reserve a register for spill addresses; borrow one at each spill instead.");
+        System.out.println("  --coloring\t Allocate with a Chaitin-Briggs graph-coloring allocator instead of the local one; the spill options above don't apply to it. Regions it can't color are allocated by the local one, with a warning on stderr.");
+        System.out.println("  --linear-scan\t Allocate with a linear-scan allocator, which is faster on very large blocks but spills more; the spill options above don't apply to it.");
+        System.out.println("  --reorder\t Before allocating, reorder the block within its data and memory dependences to lower the number of values live at once.");
+        System.out.println("  --peephole\t Remove nops, reloads of a value a register still holds and dead loadIs from the allocated code.");
         // System.out.println(
         //         "Supported command flags:\n" +
         //         "412alloc –h produce a list of valid command-line arguments that " +
@@ -0,0 +1,43 @@
+package IntermediateRepresentation;
+
+import java.util.Arrays;
+
+/**
+ * IR records kept in the heap, one int array per column
+ */
+class HeapIRStorage extends IRStorage {
+    private final int[][] columns; // [column][operation]
+
+    HeapIRStorage(int capacity) {
+        this.columns = new int[COLUMNS][capacity];
+    }
+    @Override
+    int get(int column, int op) {
+        return this.columns[column][op];
+    }
+    @Override
+    void set(int column, int op, int value) {
+        this.columns[column][op] = value;
+    }
+    @Override
+    int capacity() {
+        return this.columns[0].length;
+    }
+    @Override
+    IRStorage grow(int capacity, int size) {
+        for (int column = 0; column < COLUMNS; column++) {
+            this.columns[column] = Arrays.copyOf(this.columns[column], capacity);
+        }
+        return this;
+    }
+    @Override
+    void copy(IRStorage other, int from, int to, int count) {
+        if (!(other instanceof HeapIRStorage)) {
+            super.copy(other, from, to, count);
+            return;
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            System.arraycopy(((HeapIRStorage) other).columns[column], from, this.columns[column], to, count);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package IntermediateRepresentation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import Token.Opcode;
+
+/**
+ * Columnar (struct-of-arrays) internal representation of an ILOC block.
+ * Operation i is record i of an IRStorage: its opcode, its line, and the SR/VR/PR/NU of each of its
+ * three operand slots. Which slots an operation has, and whether they hold a register or a constant, follows
+ * from its opcode, so nothing is stored per operand besides those four ints.
+ *
+ * The SR of a register operand is not the register's name but a dense number given by numberRegister(), in the
+ * order the names are first seen, so tables indexed by SR are sized by the number of distinct registers.
+ *
+ * The records are kept in growable int arrays in the heap until they would take more than the heap budget;
+ * from then on they are spooled to a memory-mapped temp file.
+ *
+ * Spill and restore code is not inserted into the records; insertBefore() appends it to a second IRBlock (the
+ * inserted code) and remembers, by operation index, where the code inserted before each operation starts.
+ * Passes after allocation don't delete records either; remove() only marks them.
+ */
+public class IRBlock {
+    // operand slots
+    public static final int OP1 = 0;
+    public static final int OP2 = 1;
+    public static final int OP3 = 2;
+
+    private static final Opcode[] OPCODES = Opcode.values();
+    // HAS_OPERAND[opcode][slot] and IS_REGISTER[opcode][slot] describe the operand layout of each opcode
+    private static final boolean[][] HAS_OPERAND = new boolean[OPCODES.length][3];
+    private static final boolean[][] IS_REGISTER = new boolean[OPCODES.length][3];
+    // USES[opcode] lists the slots of the registers an opcode reads, DEF[opcode] is the slot of the register it writes (-1 if none)
+    private static final int[][] USES = new int[OPCODES.length][];
+    private static final int[] DEF = new int[OPCODES.length];
+    static {
+        for (Opcode opCode : OPCODES) {
+            boolean[] has = HAS_OPERAND[opCode.ordinal()];
+            boolean[] register = IS_REGISTER[opCode.ordinal()];
+            switch (opCode) {
+                case load, store:
+                    has[OP1] = has[OP3] = true;
+                    register[OP1] = register[OP3] = true;
+                    break;
+                case loadI:
+                    has[OP1] = has[OP3] = true;
+                    register[OP3] = true;
+                    break;
+                case add, sub, mult, lshift, rshift:
+                    has[OP1] = has[OP2] = has[OP3] = true;
+                    register[OP1] = register[OP2] = register[OP3] = true;
+                    break;
+                case output:
+                    has[OP1] = true;
+                    break;
+                case nop:
+                    break;
+            }
+            // store reads both of its registers; every other opcode writes its last register
+            DEF[opCode.ordinal()] = opCode != Opcode.store && register[OP3] ? OP3 : -1;
+            int useCount = 0;
+            for (int slot = OP1; slot <= OP3; slot++) {
+                if (register[slot] && slot != DEF[opCode.ordinal()]) useCount++;
+            }
+            USES[opCode.ordinal()] = new int[useCount];
+            useCount = 0;
+            for (int slot = OP1; slot <= OP3; slot++) {
+                if (register[slot] && slot != DEF[opCode.ordinal()]) USES[opCode.ordinal()][useCount++] = slot;
+            }
+        }
+    }
+
+    private int size;
+    private IRStorage storage;
+    private final long heapBudget; // bytes of records that may be kept in the heap
+
+    private IntIntMap registerNumbers; // source register name -> SR
+    private int[] registerNames; // SR -> source register name
+    private int registerCount;
+
+    private IRBlock insertedCode; // spill/restore code, in the order it runs
+    private int insertedUpTo; // the INSERTED column is only filled for the operations before this one
+    private int regionStart; // the first operation whose inserted code this block keeps, see region()
+    private final boolean view; // whether the records belong to another block, see region()
+    private BitSet removed; // operations removed after allocation, null if there are none
+
+    public IRBlock(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+    /**
+     * @param heapBudget the number of bytes the records may take in the heap before they are spooled to a mapped file
+     */
+    public IRBlock(int capacity, long heapBudget) {
+        capacity = Math.max(capacity, 16);
+        this.heapBudget = heapBudget;
+        this.view = false;
+        this.storage = (long) capacity * IRStorage.RECORD_BYTES > heapBudget ? new MappedIRStorage(capacity) : new HeapIRStorage(capacity);
+        this.registerNumbers = new IntIntMap(16);
+        this.registerNames = new int[16];
+    }
+    /**
+     * a view of the same operations for code inserted from operation regionStart on; see region()
+     */
+    private IRBlock(IRBlock whole, int regionStart) {
+        this.size = whole.size;
+        this.storage = whole.storage;
+        this.heapBudget = whole.heapBudget;
+        this.registerNumbers = whole.registerNumbers;
+        this.registerNames = whole.registerNames;
+        this.registerCount = whole.registerCount;
+        this.regionStart = regionStart;
+        this.insertedUpTo = regionStart;
+        this.view = true;
+    }
+    /**
+     * Returns a view of this block that shares its operations but keeps the code inserted from operation regionStart
+     * on apart, so that disjoint regions of the block can get spill code concurrently. The code is added back to
+     * this block by mergeInsertedCode(), in the order of the regions
+     */
+    public IRBlock region(int regionStart) {
+        return new IRBlock(this, regionStart);
+    }
+    /**
+     * adds the code inserted into a view returned by region(); the regions have to be merged in program order
+     */
+    public void mergeInsertedCode(IRBlock region) {
+        if (region.insertedCode == null) return;
+        if (this.insertedCode == null) {
+            this.insertedCode = new IRBlock(16, this.heapBudget);
+        }
+        while (this.insertedUpTo < region.regionStart) {
+            this.storage.set(IRStorage.INSERTED, this.insertedUpTo++, this.insertedCode.size);
+        }
+        // the view numbered its inserted code from 0
+        int offset = this.insertedCode.size;
+        for (int op = region.regionStart; op < region.insertedUpTo; op++) {
+            this.storage.set(IRStorage.INSERTED, op, this.storage.get(IRStorage.INSERTED, op) + offset);
+        }
+        this.insertedUpTo = region.insertedUpTo;
+        this.insertedCode.append(region.insertedCode);
+        region.clearInsertedCode();
+    }
+    /**
+     * @return whether the records have been spooled to a memory-mapped file
+     */
+    public boolean isMapped() {
+        return this.storage instanceof MappedIRStorage;
+    }
+    /**
+     * Releases the mapped file of the records and of the inserted code, if they were spooled to one. The block can't be
+     * used afterwards; a view returned by region() shares the records, so only its inserted code is released
+     */
+    public void close() {
+        clearInsertedCode();
+        if (!this.view) this.storage.close();
+    }
+    public int size() {
+        return this.size;
+    }
+    /**
+     * appends an operation; its VR, PR and NU are set to -1
+     * @return the index of the new operation
+     */
+    public int add(Opcode opCode, int line, int sr1, int sr2, int sr3) {
+        if (this.size == this.storage.capacity()) grow(this.size * 2);
+        int op = this.size++;
+        this.storage.set(IRStorage.OPCODE, op, opCode.ordinal());
+        this.storage.set(IRStorage.LINE, op, line);
+        this.storage.set(IRStorage.LIVE, op, -1);
+        this.storage.set(IRStorage.SR + OP1, op, sr1);
+        this.storage.set(IRStorage.SR + OP2, op, sr2);
+        this.storage.set(IRStorage.SR + OP3, op, sr3);
+        for (int slot = OP1; slot <= OP3; slot++) {
+            this.storage.set(IRStorage.VR + slot, op, -1);
+            this.storage.set(IRStorage.PR + slot, op, -1);
+            this.storage.set(IRStorage.NU + slot, op, -1);
+        }
+        return op;
+    }
+    /**
+     * @return the SR of the source register with the given name, numbering it if it's new
+     */
+    public int numberRegister(int name) {
+        int number = this.registerNumbers.putIfAbsent(name, this.registerCount);
+        if (number == this.registerCount) {
+            if (this.registerCount == this.registerNames.length) {
+                this.registerNames = Arrays.copyOf(this.registerNames, this.registerCount * 2);
+            }
+            this.registerNames[this.registerCount++] = name;
+        }
+        return number;
+    }
+    /**
+     * @return the number of distinct source registers, i.e. one more than the largest SR
+     */
+    public int getRegisterCount() {
+        return this.registerCount;
+    }
+    /**
+     * @return the name of the source register numbered sr
+     */
+    public int getRegisterName(int sr) {
+        return this.registerNames[sr];
+    }
+    /**
+     * appends all operations of another block (without its inserted code), numbering its registers in this block
+     */
+    public void append(IRBlock other) {
+        int[] otherToThis = new int[other.registerCount];
+        for (int sr = 0; sr < other.registerCount; sr++) {
+            otherToThis[sr] = numberRegister(other.registerNames[sr]);
+        }
+        if (this.size + other.size > this.storage.capacity()) grow(Math.max(this.size * 2, this.size + other.size));
+        this.storage.copy(other.storage, 0, this.size, other.size);
+        for (int op = this.size; op < this.size + other.size; op++) {
+            for (int slot = OP1; slot <= OP3; slot++) {
+                // inserted code has physical registers only, and no SR
+                if (isRegister(op, slot) && getSR(op, slot) != -1) setSR(op, slot, otherToThis[getSR(op, slot)]);
+            }
+        }
+        this.size += other.size;
+    }
+    /**
+     * makes room for capacity operations, spooling the records to a mapped file once they exceed the heap budget
+     */
+    private void grow(int capacity) {
+        if (!isMapped() && (long) capacity * IRStorage.RECORD_BYTES > this.heapBudget) {
+            IRStorage mapped = new MappedIRStorage(capacity);
+            mapped.copy(this.storage, 0, 0, this.size);
+            this.storage = mapped;
+        } else {
+            this.storage = this.storage.grow(capacity, this.size);
+        }
+    }
+
+    public Opcode getOpCode(int op) {
+        return OPCODES[this.storage.get(IRStorage.OPCODE, op)];
+    }
+    public int getLine(int op) {
+        return this.storage.get(IRStorage.LINE, op);
+    }
+    /**
+     * @return the number of values live just before operation op, or -1 if the block hasn't been renamed
+     */
+    public int getLive(int op) {
+        return this.storage.get(IRStorage.LIVE, op);
+    }
+    public void setLive(int op, int liveCount) {
+        this.storage.set(IRStorage.LIVE, op, liveCount);
+    }
+    public boolean hasOperand(int op, int slot) {
+        return HAS_OPERAND[this.storage.get(IRStorage.OPCODE, op)][slot];
+    }
+    public boolean isRegister(int op, int slot) {
+        return IS_REGISTER[this.storage.get(IRStorage.OPCODE, op)][slot];
+    }
+    /**
+     * @return the number of registers operation op reads
+     */
+    public int useCount(int op) {
+        return USES[this.storage.get(IRStorage.OPCODE, op)].length;
+    }
+    /**
+     * @return the slot of the i-th register operation op reads
+     */
+    public int use(int op, int i) {
+        return USES[this.storage.get(IRStorage.OPCODE, op)][i];
+    }
+    /**
+     * @return the slot of the register operation op writes, or -1 if it writes none
+     */
+    public int def(int op) {
+        return DEF[this.storage.get(IRStorage.OPCODE, op)];
+    }
+    public int getSR(int op, int slot) {
+        return this.storage.get(IRStorage.SR + slot, op);
+    }
+    private void setSR(int op, int slot, int srNumber) {
+        this.storage.set(IRStorage.SR + slot, op, srNumber);
+    }
+    public int getVR(int op, int slot) {
+        return this.storage.get(IRStorage.VR + slot, op);
+    }
+    public void setVR(int op, int slot, int vrNumber) {
+        this.storage.set(IRStorage.VR + slot, op, vrNumber);
+    }
+    public int getPR(int op, int slot) {
+        return this.storage.get(IRStorage.PR + slot, op);
+    }
+    public void setPR(int op, int slot, int prNumber) {
+        this.storage.set(IRStorage.PR + slot, op, prNumber);
+    }
+    public int getNU(int op, int slot) {
+        return this.storage.get(IRStorage.NU + slot, op);
+    }
+    public void setNU(int op, int slot, int nu) {
+        this.storage.set(IRStorage.NU + slot, op, nu);
+    }
+
+    /**
+     * Reorders the operations, so that operation i becomes the one that was operation order[i]; has to be called
+     * before anything is inserted. The records are permuted in place, one cycle of the permutation at a time
+     */
+    public void reorder(int[] order) {
+        BitSet placed = new BitSet(this.size);
+        int[] record = new int[IRStorage.COLUMNS];
+        for (int first = 0; first < this.size; first++) {
+            if (placed.get(first) || order[first] == first) continue;
+            for (int column = 0; column < IRStorage.COLUMNS; column++) {
+                record[column] = this.storage.get(column, first);
+            }
+            int op = first;
+            while (order[op] != first) {
+                this.storage.copy(this.storage, order[op], op, 1);
+                placed.set(op);
+                op = order[op];
+            }
+            for (int column = 0; column < IRStorage.COLUMNS; column++) {
+                this.storage.set(column, op, record[column]);
+            }
+            placed.set(op);
+        }
+    }
+    /**
+     * Makes the SR of every register operand its VR, so that every VR gets a source register of its own and
+     * renaming the block again gives the same live ranges, whatever order its operations were put in
+     * @param vrCount one more than the largest VR
+     */
+    public void nameRegistersAfterVRs(int vrCount) {
+        this.registerNumbers = new IntIntMap(vrCount);
+        this.registerNames = new int[Math.max(vrCount, 16)];
+        this.registerCount = 0;
+        for (int vr = 0; vr < vrCount; vr++) {
+            numberRegister(vr);
+        }
+        for (int op = 0; op < this.size; op++) {
+            for (int slot = OP1; slot <= OP3; slot++) {
+                if (isRegister(op, slot)) setSR(op, slot, getVR(op, slot));
+            }
+        }
+    }
+
+    /**
+     * Inserts a spill/restore operation before operation op. Operations must be inserted in program order,
+     * i.e. op can't be smaller than the op of an earlier insertion
+     * @param constant the constant of a loadI
+     * @param pr1 the physical register of operand 1 of a load/store
+     * @param pr3 the physical register of operand 3
+     */
+    public void insertBefore(int op, Opcode opCode, int constant, int pr1, int pr3) {
+        if (this.insertedCode == null) {
+            this.insertedCode = new IRBlock(16, this.heapBudget);
+        }
+        while (this.insertedUpTo <= op) {
+            this.storage.set(IRStorage.INSERTED, this.insertedUpTo++, this.insertedCode.size);
+        }
+        int inserted = this.insertedCode.add(opCode, -1, constant, -1, -1);
+        this.insertedCode.setPR(inserted, OP1, pr1);
+        this.insertedCode.setPR(inserted, OP3, pr3);
+    }
+    /**
+     * makes room for at least operations more inserted operations, so that a caller that knows how much spill code
+     * it will insert doesn't have the inserted code grow and copied along the way
+     */
+    public void reserveInsertedCode(int operations) {
+        if (this.insertedCode == null) {
+            this.insertedCode = new IRBlock(operations, this.heapBudget);
+        } else if (this.insertedCode.size + operations > this.insertedCode.storage.capacity()) {
+            this.insertedCode.grow(this.insertedCode.size + operations);
+        }
+    }
+    /**
+     * marks operation op as removed, so that it isn't printed
+     */
+    public void remove(int op) {
+        if (this.removed == null) {
+            this.removed = new BitSet();
+        }
+        this.removed.set(op);
+    }
+    public boolean isRemoved(int op) {
+        return this.removed != null && this.removed.get(op);
+    }
+    /**
+     * drops all code inserted into this block, or into this view since its regionStart
+     */
+    public void clearInsertedCode() {
+        if (this.insertedCode != null) this.insertedCode.close();
+        this.insertedCode = null;
+        this.insertedUpTo = this.regionStart;
+    }
+    /**
+     * @return the block holding the inserted spill/restore code, or null if nothing was inserted
+     */
+    public IRBlock getInsertedCode() {
+        return this.insertedCode;
+    }
+    /**
+     * @return the index in getInsertedCode() of the first operation inserted before operation op;
+     *         the code inserted before op is [firstInsertedBefore(op), firstInsertedBefore(op + 1))
+     */
+    public int firstInsertedBefore(int op) {
+        if (this.insertedCode == null) return 0;
+        return op < this.insertedUpTo ? this.storage.get(IRStorage.INSERTED, op) : this.insertedCode.size;
+    }
+
+    /**
+     * @return operation op in the format of the -r flag
+     */
+    public String toString(int op) {
+        String[] operands = new String[3];
+        for (int slot = OP1; slot <= OP3; slot++) {
+            if (!hasOperand(op, slot)) {
+                operands[slot] = "";
+                continue;
+            }
+            int sr = isRegister(op, slot) ? this.registerNames[getSR(op, slot)] : getSR(op, slot);
+            operands[slot] = String.format("[SR: %s, VR: %s, PR: %s]", sr, getVR(op, slot), getPR(op, slot));
+        }
+        return String.format("%s    [ %s ], [ %s ], [ %s ]", getOpCode(op), operands[OP1], operands[OP2], operands[OP3]);
+    }
+}
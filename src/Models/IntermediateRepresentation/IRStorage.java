@@ -0,0 +1,42 @@
+package IntermediateRepresentation;
+
+/**
+ * Fixed-width records of ints holding the operations of an IRBlock; column c of operation op is get(c, op).
+ * The storage has a capacity, and grow() returns a storage with more room holding the same records
+ */
+abstract class IRStorage {
+    // columns of a record
+    static final int OPCODE = 0;
+    static final int LINE = 1;
+    static final int LIVE = 2;
+    static final int SR = 3; // SR + operand slot
+    static final int VR = 6;
+    static final int PR = 9;
+    static final int NU = 12;
+    static final int INSERTED = 15; // index of the first operation of the inserted code that runs before this one
+    static final int COLUMNS = 16;
+    static final int RECORD_BYTES = COLUMNS * Integer.BYTES;
+
+    abstract int get(int column, int op);
+    abstract void set(int column, int op, int value);
+    abstract int capacity();
+    /**
+     * @return a storage with room for at least capacity records, holding the first size records of this one
+     */
+    abstract IRStorage grow(int capacity, int size);
+    /**
+     * releases what the records take outside the heap; the storage can't be used afterwards
+     */
+    void close() {
+    }
+    /**
+     * copies count records of another storage, starting at record from, to the records starting at to
+     */
+    void copy(IRStorage other, int from, int to, int count) {
+        for (int i = 0; i < count; i++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                set(column, to + i, other.get(column, from + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package IntermediateRepresentation;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int to int with linear probing, kept in two primitive arrays,
+ * so neither lookups nor insertions box their keys or values.
+ * Integer.MIN_VALUE marks an empty slot and can't be used as a key.
+ */
+public class IntIntMap {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask; // capacity - 1, the capacity is a power of two
+
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(this.keys, EMPTY);
+    }
+    public int size() {
+        return this.size;
+    }
+    /**
+     * @return the value of key, or missing if the map doesn't contain it
+     */
+    public int get(int key, int missing) {
+        int slot = slot(key);
+        return this.keys[slot] == EMPTY ? missing : this.values[slot];
+    }
+    /**
+     * adds key with the given value, unless the map already contains it
+     * @return the value of key after the call
+     */
+    public int putIfAbsent(int key, int value) {
+        int slot = slot(key);
+        if (this.keys[slot] != EMPTY) return this.values[slot];
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        // keep the load factor at most 1/2 so that probe sequences stay short
+        if (++this.size * 2 > this.keys.length) rehash();
+        return value;
+    }
+    /**
+     * @return the slot that holds key, or the empty slot where it would be inserted
+     */
+    private int slot(int key) {
+        int slot = hash(key) & this.mask;
+        while (this.keys[slot] != EMPTY && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9; // spreads consecutive keys, which are the common case for register names
+        return h ^ (h >>> 16);
+    }
+    private void rehash() {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new int[oldKeys.length * 2];
+        this.values = new int[oldValues.length * 2];
+        this.mask = this.keys.length - 1;
+        Arrays.fill(this.keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slot(oldKeys[i]);
+            this.keys[slot] = oldKeys[i];
+            this.values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package IntermediateRepresentation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * IR records spooled to a memory-mapped temp file, so they live in the page cache instead of the heap.
+ * The file is mapped in segments of SEGMENT_RECORDS fixed-width records (a single mapping can't exceed 2 GB); the last
+ * segment only maps as many records as the capacity needs, and is mapped again when it grows.
+ * The file is deleted by close(), or when the JVM exits
+ */
+class MappedIRStorage extends IRStorage {
+    private static final int SEGMENT_SHIFT = 20;
+    private static final int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT; // 64 MB per segment
+    private static final int SEGMENT_MASK = SEGMENT_RECORDS - 1;
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private int lastRecords; // records mapped by the last segment
+
+    MappedIRStorage(int capacity) {
+        try {
+            Path file = Files.createTempFile("412alloc-ir.", ".bin");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        map(capacity);
+    }
+    @Override
+    int get(int column, int op) {
+        return this.segments[op >>> SEGMENT_SHIFT].getInt((op & SEGMENT_MASK) * RECORD_BYTES + column * Integer.BYTES);
+    }
+    @Override
+    void set(int column, int op, int value) {
+        this.segments[op >>> SEGMENT_SHIFT].putInt((op & SEGMENT_MASK) * RECORD_BYTES + column * Integer.BYTES, value);
+    }
+    @Override
+    int capacity() {
+        if (this.segments.length == 0) return 0;
+        return (int) Math.min((long) (this.segments.length - 1) * SEGMENT_RECORDS + this.lastRecords, Integer.MAX_VALUE);
+    }
+    @Override
+    IRStorage grow(int capacity, int size) {
+        map(capacity);
+        return this;
+    }
+    /**
+     * closes the file, which deletes it; the segments are unmapped once they are garbage collected
+     */
+    @Override
+    void close() {
+        this.segments = new MappedByteBuffer[0];
+        this.lastRecords = 0;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    /**
+     * maps segments until there is room for capacity records, filling up the last one first; mapping past the end of
+     * the file extends it
+     */
+    private void map(int capacity) {
+        if (capacity <= capacity()) return;
+        int numSegments = (int) (((long) capacity + SEGMENT_RECORDS - 1) >>> SEGMENT_SHIFT);
+        // a partly mapped last segment is mapped again, with the records it already holds
+        int first = this.segments.length > 0 && this.lastRecords < SEGMENT_RECORDS ? this.segments.length - 1 : this.segments.length;
+        this.segments = Arrays.copyOf(this.segments, numSegments);
+        try {
+            for (int segment = first; segment < numSegments; segment++) {
+                int records = segment < numSegments - 1 ? SEGMENT_RECORDS : capacity - (segment << SEGMENT_SHIFT);
+                this.segments[segment] = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) segment * SEGMENT_RECORDS * RECORD_BYTES, (long) records * RECORD_BYTES);
+                this.lastRecords = records;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -5,43 +5,16 @@ public class Token {
     private String lexeme;
 
     private Opcode opCode;
+    private int value; //value of a CONSTANT, or the register number of a REGISTER
     public Token(int lineNumber, TokenCategory category, String lexeme){
+        this(lineNumber, category, lexeme, null, -1);
+    }
+    public Token(int lineNumber, TokenCategory category, String lexeme, Opcode opCode, int value){
         this.lineNumber = lineNumber;
         this.category = category;
         this.lexeme = lexeme;
-
-        switch (lexeme) {
-            case "load":
-                this.opCode = Opcode.load;
-                break;
-            case "loadI":
-                this.opCode = Opcode.loadI;
-                break;
-            case "store":
-                this.opCode = Opcode.store;
-                break;
-            case "add":
-                this.opCode = Opcode.add;
-                break;
-            case "sub":
-                this.opCode = Opcode.sub;
-                break;
-            case "mult":
-                this.opCode = Opcode.mult;
-                break;
-            case "lshift":
-                this.opCode = Opcode.lshift;
-                break;
-            case "rshift":
-                this.opCode = Opcode.rshift;
-                break;
-            case "nop":
-                this.opCode = Opcode.nop;
-                break;
-            case "output":
-                this.opCode = Opcode.output;
-                break;
-        }
+        this.opCode = opCode;
+        this.value = value;
     }
     public TokenCategory getTokenCategory(){
         return this.category;
@@ -52,6 +25,9 @@ public class Token {
     public String getLexeme(){
         return this.lexeme;
     }
+    public int getValue(){
+        return this.value;
+    }
     public Opcode getOpCode(){
         return this.opCode;
     }
@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+/**
+ * Indexed binary max-heap of the physical registers, ordered by next use with ties going to clean values and then
+ * to the lower register, so that its top is the register the linear scan of RegisterAllocator.getAPR() would spill.
+ * Changing the next use of a register and finding the farthest one that the current operation hasn't marked
+ * take O(log k), since only marked registers are looked past and an operation marks at most two
+ */
+class NextUseHeap {
+    private final int[] heap; //heap[i] is the register at node i; the children of node i are 2i+1 and 2i+2
+    private final int[] position; //position[pr] is the node of pr
+    private final int[] nextUse;
+    private final boolean[] clean;
+    private final int[] pending; //nodes still to be looked at by farthestUnmarked()
+
+    /**
+     * creates the heap of registers 0..k-1, all without a next use
+     */
+    NextUseHeap(int k){
+        this.heap = new int[k];
+        this.position = new int[k];
+        this.nextUse = new int[k];
+        this.clean = new boolean[k];
+        this.pending = new int[k];
+        Arrays.fill(this.nextUse, Integer.MAX_VALUE);
+        // with equal next uses the registers are already in heap order
+        for (int pr = 0; pr < k; pr++) {
+            this.heap[pr] = pr;
+            this.position[pr] = pr;
+        }
+    }
+    /**
+     * changes the next use of pr, and whether its value is clean
+     */
+    void set(int pr, int nu, boolean clean){
+        this.nextUse[pr] = nu;
+        this.clean[pr] = clean;
+        // only one of the two moves pr
+        siftUp(this.position[pr]);
+        siftDown(this.position[pr]);
+    }
+    /**
+     * @return the register with the farthest next use, clean and then lowest number on ties, among the ones whose mark isn't
+     *         generation; -1 if all of them are marked
+     */
+    int farthestUnmarked(int[] marks, int generation){
+        int best = -1;
+        int pendingCount = 0;
+        if (this.heap.length > 0) this.pending[pendingCount++] = 0;
+        // the farthest unmarked register is an unmarked node whose ancestors are all marked
+        while (pendingCount > 0) {
+            int node = this.pending[--pendingCount];
+            int pr = this.heap[node];
+            if (marks[pr] != generation) {
+                if (best == -1 || before(pr, best)) best = pr;
+                continue;
+            }
+            if (2 * node + 1 < this.heap.length) this.pending[pendingCount++] = 2 * node + 1;
+            if (2 * node + 2 < this.heap.length) this.pending[pendingCount++] = 2 * node + 2;
+        }
+        return best;
+    }
+    /**
+     * @return whether register a comes before register b in the heap order
+     */
+    private boolean before(int a, int b){
+        if (this.nextUse[a] != this.nextUse[b]) return this.nextUse[a] > this.nextUse[b];
+        if (this.clean[a] != this.clean[b]) return this.clean[a];
+        return a < b;
+    }
+    private void siftUp(int node){
+        int pr = this.heap[node];
+        while (node > 0) {
+            int parent = (node - 1) / 2;
+            if (!before(pr, this.heap[parent])) break;
+            place(this.heap[parent], node);
+            node = parent;
+        }
+        place(pr, node);
+    }
+    private void siftDown(int node){
+        int pr = this.heap[node];
+        while (2 * node + 1 < this.heap.length) {
+            int child = 2 * node + 1;
+            if (child + 1 < this.heap.length && before(this.heap[child + 1], this.heap[child])) child++;
+            if (!before(this.heap[child], pr)) break;
+            place(this.heap[child], node);
+            node = child;
+        }
+        place(pr, node);
+    }
+    private void place(int pr, int node){
+        this.heap[node] = pr;
+        this.position[pr] = node;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Optional modes selected with "--" flags placed before the usual command line arguments
+ */
+public class Options {
+    /** scan whitespace and line ends with jdk.incubator.vector when the module is present */
+    private boolean vectorScan;
+    /** scan, parse, rename and allocate chunks of the input block on a fork-join pool */
+    private boolean parallel;
+    /** number of worker threads used by the parallel modes */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * bytes of IR that may be kept in the heap before it is spooled to a memory-mapped temp file; only the operations
+     * and the spill code are spooled, the renamer's and allocators' tables indexed by register stay in the heap
+     */
+    private long heapBudget = Long.MAX_VALUE;
+    /** the name of the SpillPolicy that chooses spill victims */
+    private String spillPolicy = SpillPolicy.NAMES[0];
+    /** give all k registers to values and borrow one for each spill address instead of reserving one */
+    private boolean noReserve;
+    /** allocate with GraphColoringAllocator instead of RegisterAllocator */
+    private boolean coloring;
+    /** allocate with LinearScanAllocator instead of RegisterAllocator */
+    private boolean linearScan;
+    /** reorder the renamed block with PressureScheduler before allocating it */
+    private boolean reorder;
+    /** clean up the allocated code with Peephole */
+    private boolean peephole;
+
+    /**
+     * sets the option named by a "--" command line flag
+     * @param flag
+     * @return false if the flag is not a known option
+     */
+    public boolean set(String flag){
+        if (flag.startsWith("--threads=")) {
+            try {
+                this.threads = Integer.parseInt(flag.substring("--threads=".length()));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return this.threads > 0;
+        }
+        if (flag.startsWith("--heap-budget=")) {
+            try {
+                long megabytes = Long.parseLong(flag.substring("--heap-budget=".length()));
+                if (megabytes < 0) return false;
+                this.heapBudget = megabytes << 20;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+        if (flag.startsWith("--spill-policy=")) {
+            this.spillPolicy = flag.substring("--spill-policy=".length());
+            return SpillPolicy.forName(this.spillPolicy) != null;
+        }
+        switch (flag) {
+            case "--vector":
+                this.vectorScan = true;
+                return true;
+            case "--parallel":
+                this.parallel = true;
+                return true;
+            case "--spill-cost":
+                this.spillPolicy = "cost";
+                return true;
+            case "--no-reserve":
+                this.noReserve = true;
+                return true;
+            case "--coloring":
+                this.coloring = true;
+                return true;
+            case "--linear-scan":
+                this.linearScan = true;
+                return true;
+            case "--reorder":
+                this.reorder = true;
+                return true;
+            case "--peephole":
+                this.peephole = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+    public boolean isVectorScan(){
+        return this.vectorScan;
+    }
+    public boolean isParallel(){
+        return this.parallel;
+    }
+    public int getThreads(){
+        return this.threads;
+    }
+    public long getHeapBudget(){
+        return this.heapBudget;
+    }
+    public String getSpillPolicy(){
+        return this.spillPolicy;
+    }
+    public boolean isNoReserve(){
+        return this.noReserve;
+    }
+    public boolean isColoring(){
+        return this.coloring;
+    }
+    public boolean isLinearScan(){
+        return this.linearScan;
+    }
+    public boolean isReorder(){
+        return this.reorder;
+    }
+    public boolean isPeephole(){
+        return this.peephole;
+    }
+}
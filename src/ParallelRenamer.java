@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import IntermediateRepresentation.IRBlock;
+
+/**
+ * Parallel version of Parser.renameIR(), giving the same VR numbers, next uses, live counts and MAXLIVE.
+ *
+ * The block is split into chunks that are renamed backward on their own threads, as if every register were
+ * dead after the chunk. The first time a chunk meets a source register (walking backward) depends on what
+ * happens after the chunk, so that reference gets a tentative name and a placeholder next use.
+ * A sequential sweep over the chunks, from the last one to the first, then passes the registers that are
+ * live between chunks from one chunk to the next; it only looks at the registers each chunk exposes.
+ * Finally every chunk replaces its local names, placeholders and live counts on its own thread.
+ */
+class ParallelRenamer {
+    private final IRBlock block;
+    private final int registerCount;
+    private int maxLive;
+    private int maxVRNumber;
+
+    ParallelRenamer(IRBlock block){
+        this.block = block;
+        this.registerCount = block.getRegisterCount();
+    }
+    int getMaxLive(){
+        return this.maxLive;
+    }
+    int getMaxVRNumber(){
+        return this.maxVRNumber;
+    }
+
+    /**
+     * renames the block in numChunks chunks on the given pool
+     */
+    void rename(ForkJoinPool pool, int numChunks){
+        List<Chunk> chunks = new ArrayList<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < numChunks; i++) {
+            Chunk chunk = new Chunk((int) ((long) this.block.size() * i / numChunks), (int) ((long) this.block.size() * (i + 1) / numChunks));
+            chunks.add(chunk);
+            tasks.add(pool.submit(chunk::renameLocally));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        // sweep the chunk boundaries from bottom to top; SRToVR and LU hold the state after the current chunk
+        int[] SRToVR = new int[this.registerCount];
+        int[] LU = new int[this.registerCount];
+        Arrays.fill(SRToVR, -1);
+        Arrays.fill(LU, Integer.MAX_VALUE);
+        int VRName = 0;
+        int curLive = 0;
+        for (int i = numChunks - 1; i >= 0; i--) {
+            curLive = chunks.get(i).connect(SRToVR, LU, VRName, curLive);
+            VRName += chunks.get(i).numNames;
+        }
+        this.maxVRNumber = VRName - 1;
+
+        tasks.clear();
+        for (Chunk chunk : chunks) {
+            tasks.add(pool.submit(chunk::finish));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        for (Chunk chunk : chunks) {
+            this.maxLive = Math.max(this.maxLive, chunk.maxLive);
+        }
+    }
+
+    /**
+     * The operations [start, end) of the block. The registers it exposes are the ones it references, in the order
+     * the backward walk first meets them; the first reference of exposed register i gets the local name
+     * exposedName[i] and, until finish(), the next use -2 - i
+     */
+    private class Chunk {
+        private final int start;
+        private final int end;
+        private int localNames; //number of local names
+        private int[] localLive; //live count of each operation, as if no register were live after the chunk
+
+        private int exposedCount;
+        private int[] exposedSR;
+        private int[] exposedName;
+        private int[] exposedOp;
+        private int[] startVR; //local VR of each exposed register at the top of the chunk, -1 if it's dead there
+        private int[] startLU;
+
+        // filled in by connect()
+        private int base; //the first VR number of the chunk
+        private int numNames; //number of VR numbers the chunk introduces
+        private int liveOutCount; //number of registers live after the chunk
+        private int[] outVR; //VR of each exposed register after the chunk, -1 if it's dead there
+        private int[] outLU;
+        private int[] liveOutBefore; //liveOutBefore[i] is the number of exposed registers before i that are live after the chunk
+
+        private int maxLive;
+
+        Chunk(int start, int end){
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * the loop of Parser.renameIR() over the chunk, with local VR names
+         */
+        void renameLocally(){
+            int[] SRToVR = new int[registerCount];
+            int[] LU = new int[registerCount];
+            int[] exposedIndex = new int[registerCount];
+            Arrays.fill(exposedIndex, -1);
+            this.exposedSR = new int[16];
+            this.exposedName = new int[16];
+            this.exposedOp = new int[16];
+            this.localLive = new int[this.end - this.start];
+            int VRName = 0;
+            int curLive = 0;
+            for (int op = this.end - 1; op >= this.start; op--) {
+                //handle defined register first
+                int definedSlot = block.def(op);
+                if (definedSlot != -1) {
+                    int definedSR = block.getSR(op, definedSlot);
+                    if (exposedIndex[definedSR] == -1) {
+                        VRName = expose(definedSR, op, VRName, exposedIndex, SRToVR, LU);
+                        curLive++;
+                    }
+                    if (SRToVR[definedSR] == -1) { // unused DEF
+                        SRToVR[definedSR] = VRName++;
+                    } else {
+                        curLive--;
+                    }
+                    block.setVR(op, definedSlot, SRToVR[definedSR]);
+                    block.setNU(op, definedSlot, LU[definedSR]);
+                    SRToVR[definedSR] = -1;//kill OP3
+                    LU[definedSR] = Integer.MAX_VALUE;
+                }
+
+                // Now handle used registers
+                int useCount = block.useCount(op);
+                for (int i = 0; i < useCount; i++) {
+                    int usedSlot = block.use(op, i);
+                    int usedSR = block.getSR(op, usedSlot);
+                    if (exposedIndex[usedSR] == -1) {
+                        VRName = expose(usedSR, op, VRName, exposedIndex, SRToVR, LU);
+                        curLive++;
+                    }
+                    if (SRToVR[usedSR] == -1) {
+                        SRToVR[usedSR] = VRName++;
+                        curLive++;
+                    }
+                    block.setVR(op, usedSlot, SRToVR[usedSR]);
+                    block.setNU(op, usedSlot, LU[usedSR]);
+                }
+                for (int i = 0; i < useCount; i++) {
+                    LU[block.getSR(op, block.use(op, i))] = op;
+                }
+                this.localLive[op - this.start] = curLive;
+            }
+            this.localNames = VRName;
+            this.startVR = new int[this.exposedCount];
+            this.startLU = new int[this.exposedCount];
+            for (int i = 0; i < this.exposedCount; i++) {
+                this.startVR[i] = SRToVR[this.exposedSR[i]];
+                this.startLU[i] = LU[this.exposedSR[i]];
+            }
+        }
+        /**
+         * records the first reference of sr in the chunk and gives it a tentative name, as if sr were live after the chunk
+         * @return the next local name
+         */
+        private int expose(int sr, int op, int VRName, int[] exposedIndex, int[] SRToVR, int[] LU){
+            if (this.exposedCount == this.exposedSR.length) {
+                this.exposedSR = Arrays.copyOf(this.exposedSR, this.exposedCount * 2);
+                this.exposedName = Arrays.copyOf(this.exposedName, this.exposedCount * 2);
+                this.exposedOp = Arrays.copyOf(this.exposedOp, this.exposedCount * 2);
+            }
+            exposedIndex[sr] = this.exposedCount;
+            this.exposedSR[this.exposedCount] = sr;
+            this.exposedName[this.exposedCount] = VRName;
+            this.exposedOp[this.exposedCount] = op;
+            SRToVR[sr] = VRName;
+            LU[sr] = -2 - this.exposedCount;
+            this.exposedCount++;
+            return VRName + 1;
+        }
+
+        /**
+         * Takes the state after the chunk, given by the rename tables of the chunk below, and turns the tables
+         * into the state at the top of the chunk. Only the exposed registers are looked at
+         * @param base the first VR number of the chunk
+         * @param liveOutCount the number of registers live after the chunk
+         * @return the number of registers live at the top of the chunk
+         */
+        int connect(int[] SRToVR, int[] LU, int base, int liveOutCount){
+            this.base = base;
+            this.liveOutCount = liveOutCount;
+            this.outVR = new int[this.exposedCount];
+            this.outLU = new int[this.exposedCount];
+            this.liveOutBefore = new int[this.exposedCount + 1];
+            for (int i = 0; i < this.exposedCount; i++) {
+                this.outVR[i] = SRToVR[this.exposedSR[i]];
+                this.outLU[i] = LU[this.exposedSR[i]];
+                this.liveOutBefore[i + 1] = this.liveOutBefore[i] + (this.outVR[i] != -1 ? 1 : 0);
+            }
+            int exposedLiveOut = this.liveOutBefore[this.exposedCount];
+            // a tentative name is only a new VR if its register is dead after the chunk
+            this.numNames = this.localNames - exposedLiveOut;
+            for (int i = 0; i < this.exposedCount; i++) {
+                int sr = this.exposedSR[i];
+                SRToVR[sr] = this.startVR[i] == -1 ? -1 : finalName(this.startVR[i]);
+                LU[sr] = this.startVR[i] == -1 ? Integer.MAX_VALUE : this.startLU[i];
+            }
+            return this.localLive[0] + liveOutCount - exposedLiveOut;
+        }
+        /**
+         * @return the VR number of a local name; the tentative names of registers live after the chunk
+         *         take their VR, and the other names are numbered from base in order
+         */
+        private int finalName(int name){
+            int i = Arrays.binarySearch(this.exposedName, 0, this.exposedCount, name);
+            if (i >= 0 && this.outVR[i] != -1) return this.outVR[i];
+            if (i < 0) i = -i - 1;
+            return this.base + name - this.liveOutBefore[i];
+        }
+        /**
+         * @return the VR number of every local name
+         */
+        private int[] finalNames(){
+            int[] finalNames = new int[this.localNames];
+            int next = this.base;
+            int exposed = 0;
+            for (int name = 0; name < this.localNames; name++) {
+                if (exposed < this.exposedCount && this.exposedName[exposed] == name) {
+                    finalNames[name] = this.outVR[exposed] != -1 ? this.outVR[exposed] : next++;
+                    exposed++;
+                } else {
+                    finalNames[name] = next++;
+                }
+            }
+            return finalNames;
+        }
+        /**
+         * replaces the local names, next use placeholders and live counts of the chunk
+         */
+        void finish(){
+            int[] finalNames = finalNames();
+            int exposed = 0;
+            int exposedLiveOut = 0;
+            for (int op = this.end - 1; op >= this.start; op--) {
+                for (int slot = IRBlock.OP1; slot <= IRBlock.OP3; slot++) {
+                    if (!block.hasOperand(op, slot) || !block.isRegister(op, slot)) continue;
+                    block.setVR(op, slot, finalNames[block.getVR(op, slot)]);
+                    int nu = block.getNU(op, slot);
+                    if (nu < -1) {
+                        int i = -2 - nu;
+                        block.setNU(op, slot, this.outVR[i] != -1 ? this.outLU[i] : Integer.MAX_VALUE);
+                    }
+                }
+                // registers live after the chunk stop counting once the chunk itself references them
+                while (exposed < this.exposedCount && this.exposedOp[exposed] == op) {
+                    if (this.outVR[exposed] != -1) exposedLiveOut++;
+                    exposed++;
+                }
+                int curLive = this.localLive[op - this.start] + this.liveOutCount - exposedLiveOut;
+                block.setLive(op, curLive);
+                if (curLive > this.maxLive) this.maxLive = curLive;
+            }
+        }
+    }
+}
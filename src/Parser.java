@@ -1,24 +1,32 @@
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import IntermediateRepresentation.OpRecord;
-import IntermediateRepresentation.Operand;
-import Token.Token;
+import IntermediateRepresentation.IRBlock;
 import Token.TokenCategory;
 import Token.Opcode;
 
 public class Parser {
-    private OpRecord IRHead; //the head of the doubly linked list of internal representation records
-    private OpRecord IRTail; //the tail of the doubly linked list
-    private int maxSRNumber; 
+    private IRBlock block; //the internal representation, one row per operation
     private int maxLive;
     private int maxVRNumber;
     private Scanner scanner;
     private int numOperationsParsed; //number of operations that have been parsed; will be returned at the end
-    private List<Token> operationTokenLst; //a list of tokens that are part of the operations
     private boolean hasError;
+    private Options options;
+    private StringBuilder errorLog; //errors of a chunk parser are kept here until the chunks are stitched together; null means print them directly
+
+    // the tokens of the operation being parsed, kept as primitive fields in buffers that are reused for every operation
+    private static final int MAX_OPERATION_TOKENS = 6; //the longest operation is "arithop r, r => r"
+    private final TokenCategory[] operationCategories = new TokenCategory[MAX_OPERATION_TOKENS];
+    private final int[] operationValues = new int[MAX_OPERATION_TOKENS];
+    private final int[] operationLexemeStarts = new int[MAX_OPERATION_TOKENS];
+    private final int[] operationLexemeEnds = new int[MAX_OPERATION_TOKENS];
+    private int operationTokenCount; //number of tokens in the operation; tokens past MAX_OPERATION_TOKENS are only counted
+    private Opcode operationOpCode;
+    private int operationLine;
 
     private int[] SRToVR; //SRToVR[i] represents the VR number corresponding to i
     private int[] LU; //LU[i] represents the code block line index that has the last usage of source register ri 
@@ -31,76 +39,152 @@ public class Parser {
      * @param toBeParsedFile
      */
     public Parser(File toBeParsedFile){
-        this.scanner = new Scanner(toBeParsedFile);
-        this.IRHead = new OpRecord(-1, null, null, null, null);
-        this.maxSRNumber = 0;
+        this(toBeParsedFile, new Options());
+    }
+    public Parser(File toBeParsedFile, Options options){
+        this(new Scanner(toBeParsedFile, options), options, new IRBlock(1024, options.getHeapBudget()));
+    }
+    /**
+     * @param block the block the IR is appended to
+     */
+    private Parser(Scanner scanner, Options options, IRBlock block){
+        this.scanner = scanner;
+        this.options = options;
+        this.block = block;
         this.maxVRNumber = 0;
         this.maxLive = 0;
-        this.operationTokenLst = new ArrayList<>();
         this.hasError = false;
     }
 
     public void parse(){
+        parse(true);
+    }
+    /**
+     * Checks the whole block like parse() and reports the same messages, but streams through the operations
+     * without building the IR, so only the counters and the error state are kept (used by -p)
+     */
+    public void validate(){
+        parse(false);
+    }
+    private void parse(boolean buildIR){
         this.hasError = false;
-        Token nextToken;
-        //set current node to be the head node
-        OpRecord curOpIR = this.IRHead;
-        OpRecord preOpIR = null;
-        while ((nextToken = this.scanner.nextToken()) != null){
+        if (this.options.isParallel() && this.scanner.canSplit()) {
+            parseChunksInParallel(buildIR);
+        } else {
+            parseOperations(buildIR);
+        }
+        if (!this.hasError) {
+            //System.out.println(String.format("Parse succeeded. Processed %d operations.", this.numOperationsParsed));
+        } else {
+            System.out.println("Parse found errors.");
+        }
+        
+    }
+    /**
+     * parses every operation that the scanner produces and appends it to the IR
+     * @param buildIR false to only check the operations
+     */
+    private void parseOperations(boolean buildIR){
+        TokenCategory nextCategory;
+        while ((nextCategory = this.scanner.next()) != TokenCategory.EOF){
 
-            // reset operationTokenLst to empty
-            this.operationTokenLst = new ArrayList<>();
-            // when nextToken is EOF, we end reading the next token
-            if (nextToken.getTokenCategory().ordinal() == 9) break;
+            // reset the operation's token buffer
+            this.operationTokenCount = 0;
+            this.operationOpCode = this.scanner.getOpCode();
+            this.operationLine = this.scanner.getLine();
 
             // otherwise, we keep iterating on each operation
-            // we find an operation by keep calling nextToken() until we reach a EOL token
-            while (nextToken.getTokenCategory().ordinal() != 10) {
-                this.operationTokenLst.add(nextToken);
-                nextToken = this.scanner.nextToken();
+            // we find an operation by keep calling next() until we reach a EOL token
+            while (nextCategory != TokenCategory.EOL) {
+                if (this.operationTokenCount < MAX_OPERATION_TOKENS) {
+                    this.operationCategories[this.operationTokenCount] = nextCategory;
+                    this.operationValues[this.operationTokenCount] = this.scanner.getValue();
+                    this.operationLexemeStarts[this.operationTokenCount] = this.scanner.getLexemeStart();
+                    this.operationLexemeEnds[this.operationTokenCount] = this.scanner.getLexemeEnd();
+                }
+                this.operationTokenCount++;
+                nextCategory = this.scanner.next();
             }
             // size 0 means we are reading an empty line or a comment
-            if (this.operationTokenLst.size() == 0) {
+            if (this.operationTokenCount == 0) {
                 continue;
             }
 
-            OpRecord newIR = createIR(this.operationTokenLst);
-
             // increment the number of operations parsed
             this.numOperationsParsed++;
-            // scenario where the newIR is valid
-            if (newIR != null) {
-                this.IRTail = newIR;
-                // set the next pointer of curOpIR, and set the prev pointer of newIR
-                newIR.setPrev(curOpIR);
-                curOpIR.setNext(newIR);
-                // move the curOpIR to pre; move the newIR to cur 
-                preOpIR = curOpIR;
-                curOpIR = newIR;
-            } else {
-                // scenario where the newIR is invalid
-                // TODO: how to report error from createIR method
-
-                // print out error first 
+            if (!validateOperation()) {
+                // scenario where the operation is invalid
                 this.hasError = true;
+            } else if (buildIR) {
+                createIR();
             }
         }
-        if (!this.hasError) {
-            //System.out.println(String.format("Parse succeeded. Processed %d operations.", this.numOperationsParsed));
+    }
+    /** chunks smaller than this are not worth a task of their own */
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    /**
+     * Parallel front end: splits the input at line boundaries, counts the lines of each chunk to number them,
+     * parses every chunk into its own IR block on a fork-join pool and then appends the blocks in order.
+     * The IR, counters and error messages are the same as the ones of parseOperations()
+     */
+    private void parseChunksInParallel(boolean buildIR){
+        int threads = this.options.getThreads();
+        int[] bounds = this.scanner.splitIntoChunks(Math.max(MIN_CHUNK_BYTES, this.scanner.inputLength / (threads * 4)));
+        int numChunks = bounds.length - 1;
+        if (numChunks == 1) {
+            parseOperations(buildIR);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Integer>> lineCounts = new ArrayList<>();
+            for (int i = 0; i < numChunks; i++) {
+                int start = bounds[i];
+                int end = bounds[i + 1];
+                lineCounts.add(pool.submit(() -> this.scanner.countLineEnds(start, end)));
+            }
+            List<ForkJoinTask<Parser>> chunkParsers = new ArrayList<>();
+            int linesBefore = 0;
+            for (int i = 0; i < numChunks; i++) {
+                // the chunks share the heap budget
+                Parser chunkParser = new Parser(this.scanner.chunk(bounds[i], bounds[i + 1], linesBefore), this.options,
+                    new IRBlock(1024, this.options.getHeapBudget() / numChunks));
+                chunkParser.errorLog = new StringBuilder();
+                chunkParsers.add(pool.submit(() -> {
+                    chunkParser.parseOperations(buildIR);
+                    return chunkParser;
+                }));
+                linesBefore += lineCounts.get(i).join();
+            }
+            for (ForkJoinTask<Parser> task : chunkParsers) {
+                Parser chunkParser = task.join();
+                System.err.print(chunkParser.errorLog);
+                this.numOperationsParsed += chunkParser.numOperationsParsed;
+                this.hasError |= chunkParser.hasError;
+                this.block.append(chunkParser.block);
+                chunkParser.block.close();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    /**
+     * prints an error message, or keeps it in the error log of a chunk parser
+     */
+    private void reportError(String message){
+        if (this.errorLog == null) {
+            System.err.println(message);
         } else {
-            System.out.println("Parse found errors.");
+            this.errorLog.append(message).append(System.lineSeparator());
         }
-        
     }
     public void parseAndPrintIR(){
         //System.out.println("parse and print IR");
         parse();
         
         if (!hasError) {
-            OpRecord cur = this.IRHead.getNext();
-            while (cur != null) {
-                System.out.println(cur.toString());
-                cur = cur.getNext();
+            for (int op = 0; op < this.block.size(); op++) {
+                System.out.println(this.block.toString(op));
             }
         }
 
@@ -113,311 +197,311 @@ public class Parser {
         renameIR();
         //Register Allocation
         if (printPR) {
-            RegisterAllocator registerAllocator = new RegisterAllocator(k, this.maxLive, this.IRHead.getNext(), this.maxVRNumber);
-            registerAllocator.allocateRegister();
+            if (this.options.isReorder()) reorderForPressure(k);
+            int fallbacks = allocateRegisters(k);
+            if (fallbacks > 0) {
+                System.err.println("Warning: " + fallbacks + " region(s) could not be colored and were allocated locally");
+            }
+            if (this.options.isPeephole()) {
+                new Peephole(this.block, k).run();
+            }
         }
         printRenamedIR(printVR, printPR);
     }
     /**
-     * Helper function to build internal representation object from the list of tokens
-     * @param operationTokenLst 
-     * @return
+     * Reorders the renamed IR to lower its maxlive when it is larger than k, and renames it again if it was reordered.
+     * An order that still needs more than k registers can spill more than the current one, so it is only kept when
+     * the allocator gives it cheaper spill code
      */
-    private OpRecord createIR(List<Token> operationTokenLst){
-        TokenCategory tokenCategory = operationTokenLst.get(0).getTokenCategory();
-
-        switch (tokenCategory) {
+    void reorderForPressure(int k){
+        if (k >= this.maxLive) return;
+        PressureScheduler scheduler = new PressureScheduler(this.block, this.maxVRNumber);
+        int[] order = scheduler.schedule();
+        if (scheduler.getPeak() >= this.maxLive) return;
+        long spillCost = scheduler.getPeak() > k ? trialSpillCost(k) : -1;
+        if (spillCost == 0) return;
+        scheduler.reorder(order);
+        this.maxLive = 0;
+        renameIR();
+        if (spillCost == -1 || trialSpillCost(k) < spillCost) return;
+        scheduler.restore(order);
+        this.maxLive = 0;
+        renameIR();
+    }
+    /**
+     * allocates k registers to the renamed IR and takes the spill code out again
+     * @return the static latency weight of the spill code, as RegisterAllocator.weightedCycles counts it
+     */
+    private long trialSpillCost(int k){
+        allocateRegisters(k);
+        long cost = RegisterAllocator.weightedCycles(this.block.getInsertedCode());
+        this.block.clearInsertedCode();
+        return cost;
+    }
+    /**
+     * allocates k physical registers to the renamed IR, inserting spill code into it
+     * @return the number of regions the graph-coloring allocator left to RegisterAllocator, 0 without --coloring
+     */
+    int allocateRegisters(int k){
+        if (this.options.isColoring()) {
+            return GraphColoringAllocator.allocate(k, this.options, this.block);
+        }
+        if (this.options.isLinearScan()) {
+            new LinearScanAllocator(k, this.maxLive, this.block, this.maxVRNumber).allocateRegister();
+            return 0;
+        }
+        if (this.options.isParallel() && this.options.getThreads() > 1) {
+            // regions between points where nothing is live are allocated concurrently
+            ForkJoinPool pool = new ForkJoinPool(this.options.getThreads());
+            try {
+                RegisterAllocator.allocateRegions(k, this.options, this.block, pool, this.options.getThreads() * 4);
+            } finally {
+                pool.shutdown();
+            }
+            return 0;
+        }
+        RegisterAllocator registerAllocator = new RegisterAllocator(k, this.maxLive, this.block, this.maxVRNumber);
+        registerAllocator.configure(this.options);
+        registerAllocator.allocateRegister();
+        return 0;
+    }
+    boolean hasError(){
+        return this.hasError;
+    }
+    int getNumOperationsParsed(){
+        return this.numOperationsParsed;
+    }
+    IRBlock getIR(){
+        return this.block;
+    }
+    int getMaxLive(){
+        return this.maxLive;
+    }
+    int getMaxVRNumber(){
+        return this.maxVRNumber;
+    }
+    // the tokens expected after each kind of opcode
+    private static final TokenCategory[] MEMOP_GRAMMAR = {TokenCategory.REGISTER, TokenCategory.INTO, TokenCategory.REGISTER};
+    private static final TokenCategory[] LOADI_GRAMMAR = {TokenCategory.CONSTANT, TokenCategory.INTO, TokenCategory.REGISTER};
+    private static final TokenCategory[] ARITHOP_GRAMMAR = {TokenCategory.REGISTER, TokenCategory.COMMA, TokenCategory.REGISTER, 
+                                                            TokenCategory.INTO, TokenCategory.REGISTER};
+    private static final TokenCategory[] OUTPUT_GRAMMAR = {TokenCategory.CONSTANT};
+    private static final TokenCategory[] NOP_GRAMMAR = {};
+    /**
+     * Checks the tokens in the operation buffer against the grammar of their opcode and reports the first error.
+     * @return whether the operation is valid
+     */
+    private boolean validateOperation(){
+        TokenCategory[] grammar;
+        switch (this.operationCategories[0]) {
             case MEMOP:
-                return createMemopIR(operationTokenLst);
+                grammar = MEMOP_GRAMMAR;
+                break;
             case LOADI:
-                return createLoadiIR(operationTokenLst);
+                grammar = LOADI_GRAMMAR;
+                break;
             case ARITHOP:
-                return createArithopIR(operationTokenLst);
+                grammar = ARITHOP_GRAMMAR;
+                break;
             case OUTPUT:
-                return createOutputIR(operationTokenLst);
+                grammar = OUTPUT_GRAMMAR;
+                break;
             case NOP:
-                return createNopIR(operationTokenLst);
+                grammar = NOP_GRAMMAR;
+                if (this.operationTokenCount != 1) {
+                    reportError(String.format("ERROR %d: \tnop operation is not supposed to have any tokens", this.operationLine));
+                }
+                break;
             default:
-                printErr(operationTokenLst.get(0), operationTokenLst.get(0));
-                return null;
+                printErr(0);
+                return false;
         }
+        for (int i = 0; i < grammar.length; i++) {
+            if (!expectToken(i + 1, grammar[i])) return false;
+        }
+        return true;
     }
-    
-    private OpRecord createMemopIR(List<Token> operationTokenLst){
-        Token shouldBeRegister1 = expectToken(operationTokenLst, 1, TokenCategory.REGISTER);
-        if (shouldBeRegister1 == null) return null;
-
-        Token shouldBeInto = expectToken(operationTokenLst, 2, TokenCategory.INTO);
-        if (shouldBeInto == null) return null;
-
-        Token shouldBeRegister2 = expectToken(operationTokenLst, 3, TokenCategory.REGISTER);
-        if (shouldBeRegister2 == null) return null;
-
-        Token operatorToken = operationTokenLst.get(0);
-        int lineNum = operatorToken.getLineNumber();
-        Opcode opCode = operatorToken.getOpCode();
-        Operand operand1 = new Operand(convertLexemeToSR(shouldBeRegister1.getLexeme()), -1, -1, -1, true);
-        Operand operand3 = new Operand(convertLexemeToSR(shouldBeRegister2.getLexeme()), -1, -1, -1, true);
-        OpRecord opRecord = new OpRecord(lineNum, opCode, operand1, null, operand3);
-        return opRecord;
-    }
-    private OpRecord createLoadiIR(List<Token> operationTokenLst){
-
-        Token shouldBeConst = expectToken(operationTokenLst, 1, TokenCategory.CONSTANT);
-        if (shouldBeConst == null) return null;
-
-        Token shouldBeInto = expectToken(operationTokenLst, 2, TokenCategory.INTO);
-        if (shouldBeInto == null) return null;
-
-        Token shouldBeRegister = expectToken(operationTokenLst, 3, TokenCategory.REGISTER);
-        if (shouldBeRegister == null) return null;
-
-        Token operatorToken = operationTokenLst.get(0);
-        int lineNum = operatorToken.getLineNumber();
-        Opcode opCode = operatorToken.getOpCode();
-        Operand operand1 = new Operand(convertLexemeToSR(shouldBeConst.getLexeme()), -1, -1, -1, false);
-        Operand operand3 = new Operand(convertLexemeToSR(shouldBeRegister.getLexeme()), -1, -1, -1, true);
-        OpRecord opRecord = new OpRecord(lineNum, opCode, operand1, null, operand3);
-        return opRecord;
-    }
-    
-    private OpRecord createArithopIR(List<Token> operationTokenLst){
-
-        Token shouldBeRegister1 = expectToken(operationTokenLst, 1, TokenCategory.REGISTER);
-        if (shouldBeRegister1 == null) return null;
-        
-        Token shouldBeComma = expectToken(operationTokenLst, 2, TokenCategory.COMMA);
-        if (shouldBeComma == null) return null;
-
-        Token shouldBeRegister2 = expectToken(operationTokenLst, 3, TokenCategory.REGISTER);
-        if (shouldBeRegister2 == null) return null;
-
-        Token shouldBeInto = expectToken(operationTokenLst, 4, TokenCategory.INTO);
-        if (shouldBeInto == null) return null;
-
-        Token shouldBeRegister3 = expectToken(operationTokenLst, 5, TokenCategory.REGISTER);
-        if (shouldBeRegister3 == null) return null;
-             
-        Token operatorToken = operationTokenLst.get(0);
-        int lineNum = operatorToken.getLineNumber();
-        Opcode opCode = operatorToken.getOpCode();
-        Operand operand1 = new Operand(convertLexemeToSR(shouldBeRegister1.getLexeme()), -1, -1, -1, true);
-        Operand operand2 = new Operand(convertLexemeToSR(shouldBeRegister2.getLexeme()), -1, -1, -1, true);
-        Operand operand3 = new Operand(convertLexemeToSR(shouldBeRegister3.getLexeme()), -1, -1, -1, true);
-        OpRecord opRecord = new OpRecord(lineNum, opCode, operand1, operand2, operand3);
-        return opRecord;
-    }
-    private OpRecord createOutputIR(List<Token> operationTokenLst){
-
-        Token shouldBeConstant = expectToken(operationTokenLst, 1, TokenCategory.CONSTANT);
-        if (shouldBeConstant == null) return null;
-
-        Token operatorToken = operationTokenLst.get(0);
-        int lineNum = operatorToken.getLineNumber();
-        Opcode opCode = operatorToken.getOpCode();
-        Operand operand1 = new Operand(convertLexemeToSR(shouldBeConstant.getLexeme()), -1, -1, -1, false);  
+    /**
+     * Helper function to append the operation in the operation buffer to the IR,
+     * once validateOperation() has accepted them; -1 marks the operand slots the opcode doesn't have
+     */
+    private void createIR(){
+        TokenCategory tokenCategory = this.operationCategories[0];
 
-        OpRecord opRecord = new OpRecord(lineNum, opCode, operand1, null, null);
-        return opRecord;
-    }
-    private OpRecord createNopIR(List<Token> operationTokenLst){
-        
-        Token operatorToken = operationTokenLst.get(0);
-        if (operationTokenLst.size() != 1) {
-            System.err.println(String.format("ERROR %d: \tnop operation is not supposed to have any tokens", operatorToken.getLineNumber()));
+        switch (tokenCategory) {
+            case MEMOP:
+                this.block.add(this.operationOpCode, this.operationLine, convertTokenToSR(1), -1, convertTokenToSR(3));
+                break;
+            case LOADI:
+                this.block.add(this.operationOpCode, this.operationLine, this.operationValues[1], -1, convertTokenToSR(3));
+                break;
+            case ARITHOP:
+                this.block.add(this.operationOpCode, this.operationLine, convertTokenToSR(1), convertTokenToSR(3), convertTokenToSR(5));
+                break;
+            case OUTPUT:
+                this.block.add(this.operationOpCode, this.operationLine, this.operationValues[1], -1, -1);
+                break;
+            default:
+                this.block.add(this.operationOpCode, this.operationLine, -1, -1, -1);
+                break;
         }
-        int lineNum = operatorToken.getLineNumber();
-        Opcode opCode = operatorToken.getOpCode();
-        OpRecord opRecord = new OpRecord(lineNum, opCode, null, null, null);
-        return opRecord;
     }
-    private Token expectToken(List<Token> tokens, int index, TokenCategory expectedCategory) {
-        Token tok = (index >= 0 && index < tokens.size()) ? tokens.get(index) : null;
-        if (tok == null || tok.getTokenCategory() != expectedCategory) {
-            printErr(tokens.get(0), tok);
-            return null;
+    /**
+     * checks the category of the index-th token of the operation, and reports an error if it's missing or unexpected
+     */
+    private boolean expectToken(int index, TokenCategory expectedCategory) {
+        if (index >= this.operationTokenCount || this.operationCategories[index] != expectedCategory) {
+            printErr(index);
+            return false;
         }
-        return tok;
+        return true;
     }
     /**
-     * This helper method is used to convert register lexeme into an integer of its source register
-     * In other words, turn "r128" into 128 (integer)
-     * If the input lexeme is already an integer, then we simply convert it into Integer
+     * This helper method is used to get the source register number of a register token
+     * In other words, turn "r128" into 128 (integer); the scanner has already computed the number,
+     * and the block numbers the registers densely in the order they are seen
      */
-    private Integer convertLexemeToSR(String lexeme){
-        Integer srNumber = null;
-        try {
-            if (lexeme.charAt(0) == 'r') {
-                srNumber = Integer.valueOf(lexeme.substring(1));
-                if (srNumber > this.maxSRNumber) this.maxSRNumber = srNumber;
-                return srNumber;
-            } else {
-                return Integer.valueOf(lexeme);
-            }
-        } catch (NumberFormatException e) {
-             System.err.println("Invalid string format for integer conversion: " + e.getMessage());
-             return srNumber;
-        }
+    private int convertTokenToSR(int index){
+        return this.block.numberRegister(this.operationValues[index]);
     }
-    private void printErr(Token operationToken, Token curToken){
-        if (curToken == null) {
-            System.err.println(String.format("ERROR %d: \tMissing Token", operationToken.getLineNumber()));
+    /**
+     * reports the index-th token of the operation as an error; the lexeme is only decoded here
+     */
+    private void printErr(int index){
+        if (index >= this.operationTokenCount) {
+            reportError(String.format("ERROR %d: \tMissing Token", this.operationLine));
             return;
         }
-        System.err.println(String.format("ERROR %d: \t\"%s\" is not a valid word.", operationToken.getLineNumber(), curToken.getLexeme()));
+        String lexeme = this.scanner.lexeme(this.operationLexemeStarts[index], this.operationLexemeEnds[index]);
+        reportError(String.format("ERROR %d: \t\"%s\" is not a valid word.", this.operationLine, lexeme));
     }
     
-    private void renameIR() {
+    /** chunks of fewer operations than this are not worth renaming on a thread of their own */
+    private static final int MIN_RENAME_CHUNK_OPS = 1 << 16;
+    /**
+     * Renames the source registers into virtual registers and computes the next use of every operand,
+     * walking the block from bottom to top. Next uses are operation indices.
+     * The number of live values is kept up to date as registers become live or die, and stored for every operation
+     */
+    void renameIR() {
+        if (this.options.isParallel() && this.options.getThreads() > 1 && this.block.size() >= 2 * MIN_RENAME_CHUNK_OPS) {
+            renameIRInParallel();
+            return;
+        }
         int VRName = 0;
-        this.SRToVR = new int[this.maxSRNumber + 1];
-        this.LU = new int[this.maxSRNumber + 1];
-        for (int i = 0; i <= this.maxSRNumber; i++) {
+        int curLive = 0; //number of SRs with a VR in SRToVR
+        // SRs are numbered densely, so the tables are sized by the number of distinct registers
+        int registerCount = this.block.getRegisterCount();
+        this.SRToVR = new int[registerCount];
+        this.LU = new int[registerCount];
+        for (int i = 0; i < registerCount; i++) {
             this.SRToVR[i] = -1;//invalid value
             LU[i] = Integer.MAX_VALUE;
         }
-        int index = this.IRTail.getLine();
-
-        OpRecord curOpRecord = this.IRTail;
 
         //loop through all operations from bottom to top
-        while (!curOpRecord.equals(this.IRHead)){
-            //System.out.println("curOpRecord: " + curOpRecord.toString());
-            List<Operand> curRecordOperands = curOpRecord.getOperands();
-            
-            if (curRecordOperands == null) {
-                curOpRecord = curOpRecord.getPrev();
-                //System.out.println("curOpRecord: "+ curOpRecord.toString());
-                continue;
-            }
-
-            int operandsSize = curRecordOperands.size();
-            // edge case when the current record is EOF
-            if (operandsSize == 0) {
-                curOpRecord = curOpRecord.getPrev();
-                //System.out.println("curOpRecord: "+ curOpRecord.toString());
-                continue;
-            }
+        for (int op = this.block.size() - 1; op >= 0; op--) {
             //handle defined register first 
-            Operand definedRegister = curRecordOperands.get(operandsSize - 1);
-            if (curOpRecord.getOpCode() != Opcode.store){
-                if (!definedRegister.isRegister()) {
-                    curOpRecord = curOpRecord.getPrev();
-                    //System.out.println("curOpRecord: "+ curOpRecord.toString());
-                    continue;
-                }//it means that the current operation is OUTPUT, and the only operand is an integer
-
-                if (this.SRToVR[definedRegister.getSR()] == -1) { // unused DEF
-                    this.SRToVR[definedRegister.getSR()] = VRName++;
-                    this.maxVRNumber++;
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1){
+                int definedSR = this.block.getSR(op, definedSlot);
+                if (this.SRToVR[definedSR] == -1) { // unused DEF
+                    this.SRToVR[definedSR] = VRName++;
+                } else {
+                    curLive--;
                 }
-                definedRegister.setVR(this.SRToVR[definedRegister.getSR()]);
-                //System.out.println(String.format("the vr for sr [r%d] is: r%d", definedRegister.getSR(), definedRegister.getVR()));
-                definedRegister.setNU(LU[definedRegister.getSR()]);
-                this.SRToVR[definedRegister.getSR()] = -1;//kill OP3
-                this.LU[definedRegister.getSR()] = Integer.MAX_VALUE;
+                this.block.setVR(op, definedSlot, this.SRToVR[definedSR]);
+                this.block.setNU(op, definedSlot, LU[definedSR]);
+                this.SRToVR[definedSR] = -1;//kill OP3
+                this.LU[definedSR] = Integer.MAX_VALUE;
             }
-            
 
             // Now handle used registers
-            if (curOpRecord.getOpCode() != Opcode.store){
-                curRecordOperands.remove(operandsSize - 1);
-            }
-            // System.out.println("currentRecordOperands: " + curRecordOperands);
-            // System.out.println("currentRecordOp size: " + curRecordOperands.size());
-            for (Operand usedOperand : curRecordOperands){
-                if (!usedOperand.isRegister()) {
-                    continue; 
-                }//skip non-register operands
-                //System.out.println("current VR: " + this.SRToVR[usedOperand.getSR()]);
-                if (this.SRToVR[usedOperand.getSR()] == -1){
-                    //System.out.println(String.format("current SR: r%d; current VR: r%d", usedOperand.getSR(), usedOperand.getVR()));
-                    this.SRToVR[usedOperand.getSR()] = VRName++;
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int usedSlot = this.block.use(op, i);
+                int usedSR = this.block.getSR(op, usedSlot);
+                if (this.SRToVR[usedSR] == -1){
+                    this.SRToVR[usedSR] = VRName++;
+                    curLive++;
                 }
-                
-                usedOperand.setVR(this.SRToVR[usedOperand.getSR()]);
-                //System.out.println(String.format("after setting VR, current SR: r%d; current VR: r%d", usedOperand.getSR(), usedOperand.getVR()));
-                //System.out.println(String.format("the vr for sr [r%d] is: r%d", definedRegister.getSR(), definedRegister.getVR()));
-                usedOperand.setNU(LU[usedOperand.getSR()]);
+                this.block.setVR(op, usedSlot, this.SRToVR[usedSR]);
+                this.block.setNU(op, usedSlot, LU[usedSR]);
             }
-            for (Operand op : curRecordOperands){
-                if (!op.isRegister()) continue; //skip non-register operands
-                this.LU[op.getSR()] = index;
+            for (int i = 0; i < useCount; i++) {
+                this.LU[this.block.getSR(op, this.block.use(op, i))] = op;
             }
-            index--;
             // update maxLive
-            int curLive = 0;
-            for (int val : this.SRToVR) {
-                if (val != -1) curLive++;
-            }
+            this.block.setLive(op, curLive);
             if (curLive > this.maxLive) this.maxLive = curLive;
-            
-            curOpRecord = curOpRecord.getPrev();
-            
         }
         this.maxVRNumber = VRName - 1;
-        //System.out.println("current max VR number: " + this.maxVRNumber);
-        //System.out.println("current code block's maxlive: " + this.maxLive);
-        //System.out.println("current SRToVR: " );
-        // for (int value : SRToVR){
-            
-        //     System.out.print(String.format("%d, ", value));
-        //     System.out.println();
-        // }
-
+    }
+    /**
+     * renames chunks of the block on a fork-join pool with a ParallelRenamer; the result is the same as the one of renameIR()
+     */
+    private void renameIRInParallel() {
+        int threads = this.options.getThreads();
+        int numChunks = Math.max(1, Math.min(threads * 4, this.block.size() / MIN_RENAME_CHUNK_OPS));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ParallelRenamer renamer = new ParallelRenamer(this.block);
+            renamer.rename(pool, numChunks);
+            this.maxLive = Math.max(this.maxLive, renamer.getMaxLive());
+            this.maxVRNumber = renamer.getMaxVRNumber();
+        } finally {
+            pool.shutdown();
+        }
     }
     private void printRenamedIR(boolean printVR, boolean printPR){
-        OpRecord curOp = this.IRHead.getNext();
-        while (curOp != null){
-            Opcode opCode = curOp.getOpCode();
-            Integer operand1Register = null;
-            Integer operand1Constant = null;
-            Integer operand2Register = null;
-            Integer operand3Register = null;
-            if (curOp.getOperand1() != null) {
-                if (printVR) {
-                    operand1Register = curOp.getOperand1().getVR();
-                } else if (printPR) {
-                    operand1Register = curOp.getOperand1().getPR();
-                }
-                operand1Constant = curOp.getOperand1().getSR();
-            }
-            if (curOp.getOperand2() != null) {
-                if (printVR) {
-                    operand2Register = curOp.getOperand2().getVR();
-                } else if (printPR) {
-                    operand2Register = curOp.getOperand2().getPR();
-                }
-            }
-            if (curOp.getOperand3() != null) {
-                if (printVR) {
-                    operand3Register = curOp.getOperand3().getVR();
-                } else if (printPR) {
-                    operand3Register = curOp.getOperand3().getPR();
+        IRBlock insertedCode = this.block.getInsertedCode();
+        for (int op = 0; op < this.block.size(); op++) {
+            // spill and restore code inserted before the operation
+            if (printPR && insertedCode != null) {
+                for (int inserted = this.block.firstInsertedBefore(op); inserted < this.block.firstInsertedBefore(op + 1); inserted++) {
+                    printOperation(insertedCode, inserted, false, true);
                 }
             }
+            printOperation(this.block, op, printVR, printPR);
+        }
+    }
+    private static void printOperation(IRBlock block, int op, boolean printVR, boolean printPR){
+        if (block.isRemoved(op)) return;
+        Opcode opCode = block.getOpCode(op);
+        Integer operand1Register = null;
+        Integer operand2Register = null;
+        Integer operand3Register = null;
+        int operand1Constant = block.getSR(op, IRBlock.OP1);
+        if (printVR) {
+            operand1Register = block.getVR(op, IRBlock.OP1);
+            operand2Register = block.getVR(op, IRBlock.OP2);
+            operand3Register = block.getVR(op, IRBlock.OP3);
+        } else if (printPR) {
+            operand1Register = block.getPR(op, IRBlock.OP1);
+            operand2Register = block.getPR(op, IRBlock.OP2);
+            operand3Register = block.getPR(op, IRBlock.OP3);
+        }
 
-            switch (curOp.getOpCode()) {
-                case load:
-                    System.out.println(String.format("%s r%d => r%d", opCode, operand1Register, operand3Register));
-                    break;
-                case loadI:
-                    System.out.println(String.format("%s %d => r%d", opCode, operand1Constant, operand3Register));
-                    break;
-                case store:
-                    System.out.println(String.format("%s r%d => r%d", opCode, operand1Register, operand3Register));
-                    break;
-                case add, sub, mult, lshift, rshift:
-                    System.out.println(String.format("%s r%d, r%d => r%d", opCode, operand1Register, operand2Register, operand3Register));
-                    break;
-                case output:
-                    System.out.println(String.format("%s %d", opCode, operand1Constant));
-                    break;
-                case nop:
-                    System.out.println(String.format("nop"));
-                    break;
+        switch (opCode) {
+            case load:
+                System.out.println(String.format("%s r%d => r%d", opCode, operand1Register, operand3Register));
+                break;
+            case loadI:
+                System.out.println(String.format("%s %d => r%d", opCode, operand1Constant, operand3Register));
+                break;
+            case store:
+                System.out.println(String.format("%s r%d => r%d", opCode, operand1Register, operand3Register));
+                break;
+            case add, sub, mult, lshift, rshift:
+                System.out.println(String.format("%s r%d, r%d => r%d", opCode, operand1Register, operand2Register, operand3Register));
+                break;
+            case output:
+                System.out.println(String.format("%s %d", opCode, operand1Constant));
+                break;
+            case nop:
+                System.out.println(String.format("nop"));
+                break;
 
-            }
-            curOp = curOp.getNext();
         }
     }
     
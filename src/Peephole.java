@@ -0,0 +1,210 @@
+import java.util.Arrays;
+
+import IntermediateRepresentation.IRBlock;
+import Token.Opcode;
+
+/**
+ * Cleans up an allocated block, together with its spill code, by marking operations removed:
+ * nops, loads of an address whose value a register still holds since it was stored there or loaded from there,
+ * and loadIs whose register is written again, or never read, before anything reads it. Since the block is
+ * straight-line code, a register that isn't read before the end of the block is dead.
+ *
+ * A load into the register that holds the value is dropped; a load into another register is dropped when the reads
+ * of its register, up to where that register is written again, can read the holding register instead.
+ */
+public class Peephole {
+    /** the most operations searched for the reads of a register whose load is dropped */
+    private static final int RENAME_LIMIT = 256;
+    // what visit() found
+    private static final int GO_ON = 0;
+    private static final int ENDED = 1;
+    private static final int FAILED = 2;
+
+    private final IRBlock block;
+    private final IRBlock insertedCode;
+    private final int k;
+    private int removedNops;
+    private int removedReloads;
+    private int removedLoadIs;
+
+    // per register: the constant a loadI left in it, and the address of memory it equals, while known
+    private final int[] constant;
+    private final boolean[] known;
+    private final int[] address;
+    private final boolean[] holds;
+    // the operations scanReads() has visited, and whether one of them wrote the register the reads are renamed to
+    private int scanned;
+    private boolean toWritten;
+
+    /**
+     * @param k the number of physical registers the block was allocated with
+     */
+    public Peephole(IRBlock block, int k){
+        this.block = block;
+        this.insertedCode = block.getInsertedCode();
+        this.k = k;
+        this.constant = new int[k];
+        this.known = new boolean[k];
+        this.address = new int[k];
+        this.holds = new boolean[k];
+    }
+    int getRemovedNops(){
+        return this.removedNops;
+    }
+    int getRemovedReloads(){
+        return this.removedReloads;
+    }
+    int getRemovedLoadIs(){
+        return this.removedLoadIs;
+    }
+
+    public void run(){
+        removeNopsAndReloads();
+        removeDeadLoadIs();
+    }
+
+    /**
+     * Walks forward, knowing the constant that loadI left in each register and which registers equal the memory at an
+     * address: the value register of a store to a known address, and the target of a load from one, until either the
+     * register is written or the address is stored to again. A store to an unknown address forgets every address
+     */
+    private void removeNopsAndReloads(){
+        for (int op = 0; op < this.block.size(); op++) {
+            for (int inserted = this.block.firstInsertedBefore(op); inserted < this.block.firstInsertedBefore(op + 1); inserted++) {
+                forward(this.insertedCode, inserted, op);
+            }
+            forward(this.block, op, op);
+        }
+    }
+    /**
+     * handles operation index of code in the forward walk, which is or comes before operation op of the block
+     */
+    private void forward(IRBlock code, int index, int op){
+        if (code.isRemoved(index)) return;
+        Opcode opCode = code.getOpCode(index);
+        if (opCode == Opcode.nop) {
+            code.remove(index);
+            this.removedNops++;
+            return;
+        }
+        if (opCode == Opcode.load && this.known[code.getPR(index, IRBlock.OP1)]) {
+            int target = code.getPR(index, IRBlock.OP3);
+            int loaded = this.constant[code.getPR(index, IRBlock.OP1)];
+            for (int pr = 0; pr < this.k; pr++) {
+                if (!this.holds[pr] || this.address[pr] != loaded) continue;
+                if (pr == target || renameReads(code, index, op, target, pr)) {
+                    code.remove(index);
+                    this.removedReloads++;
+                    return;
+                }
+            }
+        }
+        if (opCode == Opcode.store) {
+            int pr = code.getPR(index, IRBlock.OP3);
+            if (!this.known[pr]) {
+                Arrays.fill(this.holds, false);
+                return;
+            }
+            forget(this.constant[pr]);
+            this.holds[code.getPR(index, IRBlock.OP1)] = true;
+            this.address[code.getPR(index, IRBlock.OP1)] = this.constant[pr];
+            return;
+        }
+        int def = code.def(index);
+        if (def == -1) return;
+        int pr = code.getPR(index, def);
+        // a load from a known address leaves pr equal to the memory there
+        boolean loadsKnown = opCode == Opcode.load && this.known[code.getPR(index, IRBlock.OP1)];
+        if (loadsKnown) this.address[pr] = this.constant[code.getPR(index, IRBlock.OP1)];
+        this.holds[pr] = loadsKnown;
+        this.known[pr] = opCode == Opcode.loadI;
+        this.constant[pr] = code.getSR(index, IRBlock.OP1);
+    }
+    /**
+     * forgets the registers that equal the memory at address
+     */
+    private void forget(int address){
+        for (int pr = 0; pr < this.k; pr++) {
+            if (this.holds[pr] && this.address[pr] == address) this.holds[pr] = false;
+        }
+    }
+
+    /**
+     * Makes the operations after the load at index of code read register to instead of register from, up to where from
+     * is written again, unless to is written before one of them reads from or they don't end within RENAME_LIMIT
+     * operations. The load is operation op of the block, or code inserted before it
+     * @return whether the reads were renamed
+     */
+    private boolean renameReads(IRBlock code, int index, int op, int from, int to){
+        return scanReads(code, index, op, from, to, false) && scanReads(code, index, op, from, to, true);
+    }
+    private boolean scanReads(IRBlock code, int index, int op, int from, int to, boolean rename){
+        this.scanned = 0;
+        this.toWritten = false;
+        int state = GO_ON;
+        if (code != this.block) {
+            // the rest of the code inserted before op, and op itself
+            for (int inserted = index + 1; inserted < this.block.firstInsertedBefore(op + 1) && state == GO_ON; inserted++) {
+                state = visit(this.insertedCode, inserted, from, to, rename);
+            }
+            if (state == GO_ON) state = visit(this.block, op, from, to, rename);
+        }
+        for (int next = op + 1; next < this.block.size() && state == GO_ON; next++) {
+            for (int inserted = this.block.firstInsertedBefore(next); inserted < this.block.firstInsertedBefore(next + 1) && state == GO_ON; inserted++) {
+                state = visit(this.insertedCode, inserted, from, to, rename);
+            }
+            if (state == GO_ON) state = visit(this.block, next, from, to, rename);
+        }
+        return state != FAILED;
+    }
+    /**
+     * checks, or renames, the reads of from in operation index of code
+     * @return GO_ON, ENDED if it writes from, or FAILED if it reads from after to was written or the limit is reached
+     */
+    private int visit(IRBlock code, int index, int from, int to, boolean rename){
+        if (code.isRemoved(index)) return GO_ON;
+        if (++this.scanned > RENAME_LIMIT) return FAILED;
+        int useCount = code.useCount(index);
+        for (int i = 0; i < useCount; i++) {
+            int slot = code.use(index, i);
+            if (code.getPR(index, slot) != from) continue;
+            if (this.toWritten) return FAILED;
+            if (rename) code.setPR(index, slot, to);
+        }
+        int def = code.def(index);
+        if (def == -1) return GO_ON;
+        if (code.getPR(index, def) == from) return ENDED;
+        if (code.getPR(index, def) == to) this.toWritten = true;
+        return GO_ON;
+    }
+
+    /**
+     * Walks backward, knowing which registers are read before they are written again
+     */
+    private void removeDeadLoadIs(){
+        boolean[] read = new boolean[this.k];
+        for (int op = this.block.size() - 1; op >= 0; op--) {
+            backward(this.block, op, read);
+            for (int inserted = this.block.firstInsertedBefore(op + 1) - 1; inserted >= this.block.firstInsertedBefore(op); inserted--) {
+                backward(this.insertedCode, inserted, read);
+            }
+        }
+    }
+    private void backward(IRBlock code, int op, boolean[] read){
+        if (code.isRemoved(op)) return;
+        int def = code.def(op);
+        if (def != -1) {
+            int pr = code.getPR(op, def);
+            if (code.getOpCode(op) == Opcode.loadI && !read[pr]) {
+                code.remove(op);
+                this.removedLoadIs++;
+                return;
+            }
+            read[pr] = false;
+        }
+        int useCount = code.useCount(op);
+        for (int i = 0; i < useCount; i++) {
+            read[code.getPR(op, code.use(op, i))] = true;
+        }
+    }
+}
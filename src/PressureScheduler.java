@@ -0,0 +1,288 @@
+import java.util.Arrays;
+
+import IntermediateRepresentation.IRBlock;
+import Token.Opcode;
+
+/**
+ * Reorders a renamed block to lower the largest number of values live at once, so that fewer of them have to be
+ * spilled. The data-dependence graph links each definition to the operations that read its VR, and keeps the
+ * memory operations in order where they may touch the same address: a store stays after the loads, outputs and store
+ * before it, loads and outputs stay after the store before them, and outputs stay in their order.
+ *
+ * Operations are list scheduled: of the ones whose predecessors are all scheduled, the one that adds the fewest live
+ * values goes next, a definition counting one and every VR it reads for the last time minus one, and on a tie
+ * the one that came first. Whether the schedule is kept is up to the caller; when it is, the registers are named
+ * after their VRs, since a source register can't be renamed across reorderings of the operations that reuse it.
+ */
+public class PressureScheduler {
+    /** the fewest live values an operation can add, reading two VRs for the last time without defining one */
+    private static final int MIN_NET = -2;
+
+    private final IRBlock block;
+    private final int vrCount;
+    private int peak;
+
+    // the dependence graph: the successors of op are successors[firstSuccessor[op] .. firstSuccessor[op + 1])
+    private int[] firstSuccessor;
+    private int[] successors;
+    private int[] predecessorCount;
+
+    /** the operations that read each VR, each one once: users[firstUser[vr] .. firstUser[vr + 1]) */
+    private int[] firstUser;
+    private int[] users;
+    /** the number of users of each VR not scheduled yet */
+    private int[] remaining;
+
+    /** the ready operations, in one min-heap of operation indices per number of live values they add */
+    private final int[][] ready = new int[1 - MIN_NET + 1][];
+    private final int[] readyCount = new int[1 - MIN_NET + 1];
+    /** the heap each ready operation is in, -1 once it is scheduled; entries in other heaps are stale */
+    private int[] heapOf;
+
+    public PressureScheduler(IRBlock block, int maxVRNumber){
+        this.block = block;
+        this.vrCount = maxVRNumber + 1;
+    }
+    /**
+     * @return the maxlive of the schedule found by the last schedule()
+     */
+    int getPeak(){
+        return this.peak;
+    }
+
+    /**
+     * puts the block in the given order and names its registers after their VRs; it has to be renamed again
+     */
+    public void reorder(int[] order){
+        this.block.reorder(order);
+        this.block.nameRegistersAfterVRs(this.vrCount);
+    }
+    /**
+     * puts a block that reorder() put in the given order back in the order it had
+     */
+    public void restore(int[] order){
+        int[] inverse = new int[order.length];
+        for (int op = 0; op < order.length; op++) {
+            inverse[order[op]] = op;
+        }
+        this.block.reorder(inverse);
+    }
+
+    /**
+     * @return the scheduled order of the operations: operation i of the schedule is order[i]
+     */
+    public int[] schedule(){
+        int size = this.block.size();
+        buildUsers();
+        buildGraph();
+        this.remaining = new int[this.vrCount];
+        this.heapOf = new int[size];
+        Arrays.fill(this.heapOf, -1);
+        for (int heap = 0; heap < this.ready.length; heap++) {
+            this.ready[heap] = new int[16];
+            this.readyCount[heap] = 0;
+        }
+        int live = 0;
+        boolean[] defined = new boolean[this.vrCount];
+        for (int op = 0; op < size; op++) {
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1) defined[this.block.getVR(op, definedSlot)] = true;
+        }
+        for (int vr = 0; vr < this.vrCount; vr++) {
+            this.remaining[vr] = this.firstUser[vr + 1] - this.firstUser[vr];
+            // a VR that is read but never defined is live from the top of the block
+            if (this.remaining[vr] > 0 && !defined[vr]) live++;
+        }
+        for (int op = 0; op < size; op++) {
+            if (this.predecessorCount[op] == 0) makeReady(op);
+        }
+
+        int[] order = new int[size];
+        this.peak = live;
+        for (int scheduled = 0; scheduled < size; scheduled++) {
+            int op = next();
+            order[scheduled] = op;
+            this.heapOf[op] = -1;
+            this.peak = Math.max(this.peak, live);
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int vr = this.block.getVR(op, this.block.use(op, i));
+                if (i > 0 && vr == this.block.getVR(op, this.block.use(op, 0))) continue;
+                this.remaining[vr]--;
+                if (this.remaining[vr] == 0) live--;
+                // the last user of vr now ends it, so it adds one live value less
+                if (this.remaining[vr] == 1) {
+                    for (int u = this.firstUser[vr]; u < this.firstUser[vr + 1]; u++) {
+                        int user = this.users[u];
+                        if (this.heapOf[user] != -1) makeReady(user);
+                    }
+                }
+            }
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1 && this.remaining[this.block.getVR(op, definedSlot)] > 0) live++;
+            for (int s = this.firstSuccessor[op]; s < this.firstSuccessor[op + 1]; s++) {
+                if (--this.predecessorCount[this.successors[s]] == 0) makeReady(this.successors[s]);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * lists the operations that read each VR
+     */
+    private void buildUsers(){
+        int size = this.block.size();
+        this.firstUser = new int[this.vrCount + 1];
+        for (int op = 0; op < size; op++) {
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int vr = this.block.getVR(op, this.block.use(op, i));
+                if (i > 0 && vr == this.block.getVR(op, this.block.use(op, 0))) continue;
+                this.firstUser[vr + 1]++;
+            }
+        }
+        for (int vr = 0; vr < this.vrCount; vr++) {
+            this.firstUser[vr + 1] += this.firstUser[vr];
+        }
+        this.users = new int[this.firstUser[this.vrCount]];
+        int[] filled = Arrays.copyOf(this.firstUser, this.vrCount);
+        for (int op = 0; op < size; op++) {
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int vr = this.block.getVR(op, this.block.use(op, i));
+                if (i > 0 && vr == this.block.getVR(op, this.block.use(op, 0))) continue;
+                this.users[filled[vr]++] = op;
+            }
+        }
+    }
+    /**
+     * builds the data and memory dependences, walking the block forward
+     */
+    private void buildGraph(){
+        int size = this.block.size();
+        int[] from = new int[Math.max(16, 2 * size)];
+        int[] to = new int[from.length];
+        int edges = 0;
+        int[] definition = new int[this.vrCount];
+        Arrays.fill(definition, -1);
+        int lastStore = -1;
+        int lastOutput = -1;
+        int[] readers = new int[16]; // the loads and outputs since lastStore
+        int readerCount = 0;
+        for (int op = 0; op < size; op++) {
+            // at most two uses, a store or an output edge, and the readers a store waits for
+            int needed = edges + 4 + (this.block.getOpCode(op) == Opcode.store ? readerCount : 0);
+            if (needed > from.length) {
+                from = Arrays.copyOf(from, Math.max(needed, 2 * from.length));
+                to = Arrays.copyOf(to, from.length);
+            }
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++) {
+                int vr = this.block.getVR(op, this.block.use(op, i));
+                if (definition[vr] != -1) {
+                    from[edges] = definition[vr];
+                    to[edges++] = op;
+                }
+            }
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1) definition[this.block.getVR(op, definedSlot)] = op;
+            Opcode opCode = this.block.getOpCode(op);
+            if (opCode != Opcode.load && opCode != Opcode.store && opCode != Opcode.output) continue;
+            if (lastStore != -1) {
+                from[edges] = lastStore;
+                to[edges++] = op;
+            }
+            if (opCode == Opcode.store) {
+                for (int i = 0; i < readerCount; i++) {
+                    from[edges] = readers[i];
+                    to[edges++] = op;
+                }
+                readerCount = 0;
+                lastStore = op;
+                continue;
+            }
+            if (opCode == Opcode.output) {
+                if (lastOutput != -1) {
+                    from[edges] = lastOutput;
+                    to[edges++] = op;
+                }
+                lastOutput = op;
+            }
+            if (readerCount == readers.length) readers = Arrays.copyOf(readers, 2 * readerCount);
+            readers[readerCount++] = op;
+        }
+        this.firstSuccessor = new int[size + 1];
+        this.predecessorCount = new int[size];
+        for (int e = 0; e < edges; e++) {
+            this.firstSuccessor[from[e] + 1]++;
+            this.predecessorCount[to[e]]++;
+        }
+        for (int op = 0; op < size; op++) {
+            this.firstSuccessor[op + 1] += this.firstSuccessor[op];
+        }
+        this.successors = new int[edges];
+        int[] filled = Arrays.copyOf(this.firstSuccessor, size);
+        for (int e = 0; e < edges; e++) {
+            this.successors[filled[from[e]]++] = to[e];
+        }
+    }
+
+    /**
+     * @return the number of live values scheduling op next would add
+     */
+    private int net(int op){
+        int net = 0;
+        int definedSlot = this.block.def(op);
+        if (definedSlot != -1 && this.remaining[this.block.getVR(op, definedSlot)] > 0) net++;
+        int useCount = this.block.useCount(op);
+        for (int i = 0; i < useCount; i++) {
+            int vr = this.block.getVR(op, this.block.use(op, i));
+            if (i > 0 && vr == this.block.getVR(op, this.block.use(op, 0))) continue;
+            if (this.remaining[vr] == 1) net--;
+        }
+        return net;
+    }
+    /**
+     * puts op into the heap of its current net, again if it already is in another one
+     */
+    private void makeReady(int op){
+        int heap = net(op) - MIN_NET;
+        if (this.heapOf[op] == heap) return;
+        this.heapOf[op] = heap;
+        if (this.readyCount[heap] == this.ready[heap].length) this.ready[heap] = Arrays.copyOf(this.ready[heap], 2 * this.readyCount[heap]);
+        int[] ops = this.ready[heap];
+        int node = this.readyCount[heap]++;
+        while (node > 0 && ops[(node - 1) / 2] > op) {
+            ops[node] = ops[(node - 1) / 2];
+            node = (node - 1) / 2;
+        }
+        ops[node] = op;
+    }
+    /**
+     * @return the first operation of the lowest heap that holds one, removing the stale entries on the way
+     */
+    private int next(){
+        for (int heap = 0; heap < this.ready.length; heap++) {
+            while (this.readyCount[heap] > 0) {
+                int op = pop(heap);
+                if (this.heapOf[op] == heap) return op;
+            }
+        }
+        throw new IllegalStateException("the dependence graph has a cycle");
+    }
+    private int pop(int heap){
+        int[] ops = this.ready[heap];
+        int top = ops[0];
+        int last = ops[--this.readyCount[heap]];
+        int node = 0;
+        while (2 * node + 1 < this.readyCount[heap]) {
+            int child = 2 * node + 1;
+            if (child + 1 < this.readyCount[heap] && ops[child + 1] < ops[child]) child++;
+            if (ops[child] >= last) break;
+            ops[node] = ops[child];
+            node = child;
+        }
+        ops[node] = last;
+        return top;
+    }
+}
@@ -1,267 +1,571 @@
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import IntermediateRepresentation.OpRecord;
-import IntermediateRepresentation.Operand;
+import IntermediateRepresentation.IRBlock;
 import Token.Opcode;
 
 public class RegisterAllocator {
+    /** number of physical registers */
+    private int registers;
     /** number of physical registers that can be allocated */
     private int k;
     /** max live of the code block */
     private int maxLive;
-    /** potential reserved register */
+    /** reserve a register for spill addresses when k is smaller than maxlive, instead of borrowing one at each spill */
+    private boolean reserve = true;
+    /** potential reserved register, -1 if there is none */
     private int reservedRegister;
-    private OpRecord IRHead;
+    /** the spill address the reserved register holds, -1 if it holds none yet */
+    private int reservedAddress;
+    /** set when a spill needed an address register and none could be borrowed */
+    private boolean stuck;
+    private IRBlock block;
+    /** the operations [start, end) of the block are allocated */
+    private int start;
+    private int end;
+    /** the VRs of the allocated operations are firstVR..maxVRNumber; the VR tables are indexed by VR - firstVR */
+    private int firstVR;
     private int maxVRNumber;
     private int[] VRToPR;
     private int[] PRToVR;
     private int[] PRNU;
+    /** PRClean[pr] is isClean(pr) as of the last setPRNU(pr), and cleanCount the number of such PRs */
+    private boolean[] PRClean;
+    private int cleanCount;
     private int[] VRToSpillLoc;
-    private Deque<Integer> PRStack;
-    boolean[] curOpRecordPRs;
+    /** the free PRs, in the order they were freed: a ring buffer of freePRCount entries from freePRHead */
+    private int[] freePRs;
+    private int freePRHead;
+    private int freePRCount;
+    /** a PR is marked by the current operation when PRMark[pr] == markGeneration; bumping the generation clears all marks */
+    private int[] PRMark;
+    private int markGeneration;
+    /** the operands of the current operation are the PRs marked since opMarkGeneration */
+    private int opMarkGeneration;
+    /** PRs ordered by PRNU, for finding spill victims when k is large; null means PRNU is scanned */
+    private NextUseHeap victims;
+    /** from this many PRs on, victims are found with a NextUseHeap */
+    static final int INDEXED_VICTIMS_MIN_K = 64;
+    /** chooses the spill victim when the NextUseHeap doesn't */
+    private SpillPolicy policy = new BeladyPolicy();
+    /** the last operation that used or defined the value in each PR, for policies that look back */
+    private int[] PRLastUse;
+    /** number of stores and of restores inserted so far */
+    private int storeCount;
+    private int restoreCount;
+    /** spill slots are handed out from spilledAddr up, after reusing the slots of dead VRs */
+    private int firstSpillAddr;
     private int spilledAddr;
-    public RegisterAllocator(int k, int maxLive, OpRecord IRHead, int maxVRNumber){
-        this.k = k;
+    /** slots of dead VRs, a stack so that the most recently freed slot is reused first */
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private boolean reuseSlots = true;
+    public RegisterAllocator(int k, int maxLive, IRBlock block, int maxVRNumber){
+        this(k, maxLive, block, 0, block.size(), 0, maxVRNumber, 32768);
+    }
+    private RegisterAllocator(int k, int maxLive, IRBlock block, int start, int end, int firstVR, int maxVRNumber, int firstSpillAddr){
+        this.registers = k;
         this.maxLive = maxLive;
+        this.block = block;
+        this.start = start;
+        this.end = end;
+        this.firstVR = firstVR;
+        this.maxVRNumber = maxVRNumber;
+        this.VRToPR = new int[this.maxVRNumber - this.firstVR + 1];
+        this.VRToSpillLoc = new int[this.maxVRNumber - this.firstVR + 1];
+        this.firstSpillAddr = firstSpillAddr;
+        this.freeSlots = new int[16];
+        reset();
+        useIndexedVictims(this.k >= INDEXED_VICTIMS_MIN_K);
+    }
+    /**
+     * puts every VR out of the PRs and memory, and sets aside the reserved register if there is one
+     */
+    private void reset(){
+        this.k = this.registers;
+        this.reservedRegister = -1;
+        this.reservedAddress = -1;
         // reserve a register when k is smaller than maxlive
-        if (k < maxLive){
+        if (this.reserve && this.registers < this.maxLive){
             this.k--;
-            this.reservedRegister = k - 1;
+            this.reservedRegister = this.registers - 1;
         }
-        this.IRHead = IRHead;
-        this.maxVRNumber = maxVRNumber;
-        this.VRToPR = new int[this.maxVRNumber + 1];
-        this.VRToSpillLoc = new int[this.maxVRNumber + 1];
-        this.spilledAddr = 32768;
-        this.PRStack = new ArrayDeque<>();
-        for (int vr = 0; vr <= this.maxVRNumber; vr++){
+        this.spilledAddr = this.firstSpillAddr;
+        this.freeSlotCount = 0;
+        this.stuck = false;
+        for (int vr = 0; vr < this.VRToPR.length; vr++){
             this.VRToPR[vr] = -1;
             this.VRToSpillLoc[vr] = Integer.MAX_VALUE;
         }
         this.PRToVR = new int[this.k];
         this.PRNU = new int[this.k];
+        this.PRClean = new boolean[this.k];
+        this.cleanCount = this.k;
+        this.freePRs = new int[this.k];
+        this.PRMark = new int[this.k];
+        this.PRLastUse = new int[this.k];
+        this.storeCount = 0;
+        this.restoreCount = 0;
+        this.freePRHead = 0;
+        this.freePRCount = 0;
+        if (this.victims != null) this.victims = new NextUseHeap(this.k);
 
         for (int pr = 0; pr < this.k; pr++){
             this.PRToVR[pr] = -1;
             this.PRNU[pr] = Integer.MAX_VALUE;
-            this.PRStack.offerLast(pr);
+            this.PRClean[pr] = true;
+            this.freePRs[this.freePRCount++] = pr;
         }
+    }
+
+    /**
+     * chooses between finding the victims of BeladyPolicy with a NextUseHeap and scanning PRNU; has to be called
+     * before allocating
+     */
+    void useIndexedVictims(boolean indexed){
+        this.victims = indexed ? new NextUseHeap(this.k) : null;
+    }
+    /**
+     * sets the policy that chooses spill victims; has to be called before allocating. Only BeladyPolicy victims are
+     * found with a NextUseHeap, the order of the other ones isn't kept in it
+     */
+    void useSpillPolicy(SpillPolicy policy){
+        this.policy = policy;
+        if (!(policy instanceof BeladyPolicy)) useIndexedVictims(false);
+    }
+    /**
+     * Chooses between reserving a register for spill addresses and giving all k registers to values; has to be
+     * called before allocating. Without a reserved register, a restore loads the address into the register it
+     * restores into, and a store borrows a clean register that the operation doesn't read: its value is dropped and
+     * reloaded when it is used again. If no such register is left, the block is allocated again with a reserved one
+     */
+    void useReservedRegister(boolean reserve){
+        this.reserve = reserve;
+        reset();
+    }
+    /**
+     * applies the allocation modes selected on the command line
+     */
+    void configure(Options options){
+        useSpillPolicy(SpillPolicy.forName(options.getSpillPolicy()));
+        useReservedRegister(!options.isNoReserve());
+    }
 
+    /**
+     * chooses whether the spill slots of dead VRs are reused; has to be called before allocating
+     */
+    void reuseSpillSlots(boolean reuse){
+        this.reuseSlots = reuse;
+    }
+    /**
+     * @return the number of bytes of spill memory used so far
+     */
+    int getSpillAreaSize(){
+        return this.spilledAddr - this.firstSpillAddr;
+    }
+    int getStoreCount(){
+        return this.storeCount;
+    }
+    int getRestoreCount(){
+        return this.restoreCount;
     }
 
-    public void allocateRegister(){
-        
-        OpRecord curOpRecord = this.IRHead;
-        while (curOpRecord != null) {
-            //clear the mark in each PR
-            this.curOpRecordPRs = new boolean[this.k];
-            
-            List<Operand> curRecordOperands = curOpRecord.getOperands();
-            if (curRecordOperands == null) {
-                curOpRecord = curOpRecord.getNext();
-                //System.out.println("curOpRecord: "+ curOpRecord.toString());
-                continue;
+    // queries for SpillPolicy, about the PRs that values can be allocated to
+    int registerCount(){
+        return this.k;
+    }
+    /**
+     * @return whether the current operation uses or defines PR, so that it can't be spilled
+     */
+    boolean isMarked(int PR){
+        return this.PRMark[PR] == this.markGeneration;
+    }
+    /**
+     * @return the operation of the next use of the value in PR, Integer.MAX_VALUE if there is none
+     */
+    int nextUse(int PR){
+        return this.PRNU[PR];
+    }
+    int lastUse(int PR){
+        return this.PRLastUse[PR];
+    }
+    /**
+     * @return whether the value in PR comes from a loadI, so that restoring it takes a loadI instead of a load
+     */
+    boolean isRematerializable(int PR){
+        return this.VRToSpillLoc[this.PRToVR[PR]] < 1;
+    }
+
+    /**
+     * Allocates the region [start, end) of a renamed block, where no value is live before start or before end.
+     * Its VRs are a range of their own, since renaming numbers them while it walks through the region
+     * @param block a view of the block from region(start), which keeps the inserted code of the region
+     * @param firstSpillAddr the first spill address of the region, which uses at most 4 * maxlive bytes from there on
+     */
+    private static RegisterAllocator forRegion(int k, IRBlock block, int start, int end, int firstSpillAddr){
+        int maxLive = 0;
+        int firstVR = Integer.MAX_VALUE;
+        int maxVRNumber = -1;
+        for (int op = start; op < end; op++) {
+            maxLive = Math.max(maxLive, block.getLive(op));
+            for (int slot = IRBlock.OP1; slot <= IRBlock.OP3; slot++) {
+                if (!block.hasOperand(op, slot) || !block.isRegister(op, slot)) continue;
+                firstVR = Math.min(firstVR, block.getVR(op, slot));
+                maxVRNumber = Math.max(maxVRNumber, block.getVR(op, slot));
             }
-            int operandsSize = curRecordOperands.size();
+        }
+        if (maxVRNumber == -1) firstVR = 0;
+        return new RegisterAllocator(k, maxLive, block, start, end, firstVR, maxVRNumber, firstSpillAddr);
+    }
+
+    /**
+     * allocates the region [start, end) of a renamed block on its own, like one region of allocateRegions()
+     * @param block a view of the block from region(start)
+     */
+    static void allocateRegion(int k, Options options, IRBlock block, int start, int end){
+        RegisterAllocator allocator = forRegion(k, block, start, end, 32768);
+        allocator.configure(options);
+        allocator.allocateRegister();
+    }
 
-            // edge case when the current record is EOF/EOL/NOP
-            if (operandsSize == 0) {
-                curOpRecord = curOpRecord.getNext();
-                //System.out.println("curOpRecord: "+ curOpRecord.toString());
-                continue;
+    /** regions of fewer operations than this are not worth a task of their own */
+    private static final int MIN_REGION_OPS = 1 << 14;
+    /**
+     * Cuts the renamed block before operations where no value is live and allocates the regions between the cuts
+     * concurrently. Every region gets its own PR state and a disjoint range of spill addresses, and its spill code is
+     * merged back into the block in order. Since a spill slot is reused once its VR is dead, a region never holds more
+     * slots than it has values live at once, so its range is 4 * maxlive bytes
+     * @param numRegions the number of regions to aim for; regions are at least MIN_REGION_OPS operations long
+     */
+    public static void allocateRegions(int k, Options options, IRBlock block, ForkJoinPool pool, int numRegions){
+        int regionOps = Math.max(MIN_REGION_OPS, block.size() / numRegions);
+        List<ForkJoinTask<RegisterAllocator>> regions = new ArrayList<>();
+        int regionStart = 0;
+        int firstSpillAddr = 32768;
+        int maxLive = 0; //max live of the region
+        for (int op = 0; op <= block.size(); op++) {
+            if (op == block.size() || (op - regionStart >= regionOps && block.getLive(op) == 0)) {
+                if (op > regionStart) {
+                    int start = regionStart;
+                    int end = op;
+                    int spillAddr = firstSpillAddr;
+                    IRBlock region = block.region(start);
+                    regions.add(pool.submit(() -> {
+                        RegisterAllocator allocator = forRegion(k, region, start, end, spillAddr);
+                        allocator.configure(options);
+                        allocator.allocateRegister();
+                        return allocator;
+                    }));
+                    firstSpillAddr = Math.addExact(firstSpillAddr, 4 * maxLive);
+                    maxLive = 0;
+                    regionStart = op;
+                }
+            }
+            if (op < block.size()) {
+                maxLive = Math.max(maxLive, block.getLive(op));
             }
-            //System.out.println("current operation operands: " + curRecordOperands);
+        }
+        for (ForkJoinTask<RegisterAllocator> region : regions) {
+            block.mergeInsertedCode(region.join().block);
+        }
+    }
 
+    /**
+     * Allocates the operations in place. Apart from the spill code that is inserted, nothing is allocated per operation:
+     * all state is kept in int arrays made by the constructor
+     */
+    public void allocateRegister(){
+        if (allocateOperations()) return;
+        // some spill had no register left to borrow for its address, so start over with a reserved one
+        this.block.clearInsertedCode();
+        this.reserve = true;
+        reset();
+        allocateOperations();
+    }
+    /**
+     * @return false if a spill got stuck without a register for its address; the allocation is then incomplete
+     */
+    private boolean allocateOperations(){
+        
+        for (int op = this.start; op < this.end; op++) {
+            //clear the mark in each PR
+            this.markGeneration++;
+            this.opMarkGeneration = this.markGeneration;
+            
             //special handling for rematerializable values
-            if (curOpRecord.getOpCode().equals(Opcode.loadI)){
-                int curVR = curOpRecord.getOperand3().getVR();
-                int addr = curOpRecord.getOperand1().getSR();
+            if (this.block.getOpCode(op) == Opcode.loadI){
+                int curVR = this.block.getVR(op, IRBlock.OP3) - this.firstVR;
+                int addr = this.block.getSR(op, IRBlock.OP1);
                 this.VRToSpillLoc[curVR] = -addr;
-                // System.out.println("curOpRecord: " + curOpRecord);
-                // System.out.println(String.format("VRToSpillLoc[%d] = %d", curVR, this.VRToSpillLoc[curVR]));
             }
 
-            Operand definedRegister = curRecordOperands.get(operandsSize - 1);
-            if (!definedRegister.isRegister()) {
-                    curOpRecord = curOpRecord.getNext();
-                    //System.out.println("curOpRecord: "+ curOpRecord.toString());
-                    continue;
-            }//it means that the current operation is OUTPUT, and the only operand is an integer
-
             // Now handle used registers
-            if (curOpRecord.getOpCode() != Opcode.store){
-                curRecordOperands.remove(operandsSize - 1);
-            }
-            // System.out.println("currentRecordOperands: " + curRecordOperands);
-            // System.out.println("currentRecordOp size: " + curRecordOperands.size());
-            for (Operand usedOperand : curRecordOperands){
-                if (!usedOperand.isRegister()) {
-                    continue; 
-                }//skip non-register operands
-                int pr = this.VRToPR[usedOperand.getVR()];
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++){
+                int usedSlot = this.block.use(op, i);
+                int vr = this.block.getVR(op, usedSlot) - this.firstVR;
+                int pr = this.VRToPR[vr];
                 if (pr == -1) {
-                    pr = getAPR(usedOperand.getVR(), usedOperand.getNU(), curOpRecord);
-                    usedOperand.setPR(pr);
-                    //System.out.println("current operation record where a restore should take place right after: " + curOpRecord);
-                    OpRecord prev = curOpRecord.getPrev();
-                    restore(usedOperand.getVR(), usedOperand.getPR(), curOpRecord);
-                    // System.out.println("prev: " + prev);
-                    // System.out.println("is supposed to be loadI: " + prev.getNext());
-                    // System.out.println("is supposed to be load: " + prev.getNext().getNext());
-                    // System.out.println("is supposed to be cur: " + prev.getNext().getNext().getNext());
+                    pr = getAPR(vr, this.block.getNU(op, usedSlot), op);
+                    this.block.setPR(op, usedSlot, pr);
+                    restore(vr, pr, op);
                 } else {
-                    usedOperand.setPR(pr);
+                    this.block.setPR(op, usedSlot, pr);
+                    // cost-aware victims need the distance to the real next use, not the one the value was loaded for,
+                    // and so does the choice of a PR to store early or to borrow without a reserved register
+                    if (this.policy.needsCurrentNextUse() || this.reservedRegister == -1) setPRNU(pr, this.block.getNU(op, usedSlot));
                 }
-                //TODO: set the mark in U.PR
-                this.curOpRecordPRs[pr] = true;
+                //set the mark in U.PR
+                this.PRMark[pr] = this.markGeneration;
+                this.PRLastUse[pr] = op;
             }
-            for (Operand usedOperand : curRecordOperands){
-                if (!usedOperand.isRegister()) {
-                    continue; 
-                }//skip non-register operands
-                if (usedOperand.getNU() == Integer.MAX_VALUE && this.PRToVR[usedOperand.getPR()] != -1){
-                    freeAPR(usedOperand.getPR());
+            for (int i = 0; i < useCount; i++){
+                int usedSlot = this.block.use(op, i);
+                int pr = this.block.getPR(op, usedSlot);
+                if (this.block.getNU(op, usedSlot) == Integer.MAX_VALUE && this.PRToVR[pr] != -1){
+                    freeAPR(pr);
                 }
                 
             }
             // clear the mark in each PR
-            this.curOpRecordPRs = new boolean[this.k];
+            this.markGeneration++;
             //now handle defined register  
-            if (curOpRecord.getOpCode() != Opcode.store){
-                int pr = getAPR(definedRegister.getVR(), definedRegister.getNU(), curOpRecord);
-                definedRegister.setPR(pr);
+            int definedSlot = this.block.def(op);
+            if (definedSlot != -1){
+                int pr = getAPR(this.block.getVR(op, definedSlot) - this.firstVR, this.block.getNU(op, definedSlot), op);
+                this.block.setPR(op, definedSlot, pr);
+                // without a reserved register, some PR has to stay free or clean so that the next spill can borrow it
+                if (this.reservedRegister == -1 && this.freePRCount == 0 && !isClean(pr) && !hasCleanRegister(pr)) {
+                    storeEarly(pr, op);
+                }
                 // set the mark in definedRegister.PR
-                this.curOpRecordPRs[pr] = true;
+                this.PRMark[pr] = this.markGeneration;
+                this.PRLastUse[pr] = op;
             }
-            
-            curOpRecord = curOpRecord.getNext();
+            if (this.stuck) return false;
         }
-        
+        return true;
     }
-    private Integer getAPR(Integer VR, Integer NU, OpRecord curOpRecord){
+    private int getAPR(int VR, int NU, int op){
         int x = -1;
-        if (!this.PRStack.isEmpty()){
-            x = this.PRStack.pollFirst();
+        if (this.freePRCount > 0){
+            x = this.freePRs[this.freePRHead];
+            this.freePRHead = (this.freePRHead + 1) % this.k;
+            this.freePRCount--;
+        } else if (this.victims != null) {
+            x = this.victims.farthestUnmarked(this.PRMark, this.markGeneration);
+            spill(x, op);
         } else {
-            //pick an unmarked x to spill; what if there is a tie between multiple PRs
-            //int toBeSpilledPR = -1;
-            int farthestNextUse = -1;
-            for (int i = 0; i < this.PRNU.length; i++){
-                if (this.PRNU[i] > farthestNextUse && !this.curOpRecordPRs[i]) {
-                    farthestNextUse = this.PRNU[i];
-                    x = i;
-                }
-            }
-
-            spill(x, curOpRecord);
+            //pick an unmarked x to spill
+            x = this.policy.victim(this, op);
+            spill(x, op);
         }
         this.VRToPR[VR] = x;
         this.PRToVR[x] = VR;
-        this.PRNU[x] = NU;
+        setPRNU(x, NU);
         return x;
     }
-    private void freeAPR(Integer PR) {
+    private void freeAPR(int PR) {
+        // PR holds the last use of its VR, so a spill slot of the VR won't be loaded again
+        int slot = this.VRToSpillLoc[this.PRToVR[PR]];
+        if (this.reuseSlots && slot > 32767 && slot != Integer.MAX_VALUE) {
+            if (this.freeSlotCount == this.freeSlots.length) this.freeSlots = Arrays.copyOf(this.freeSlots, 2 * this.freeSlotCount);
+            this.freeSlots[this.freeSlotCount++] = slot;
+        }
         this.VRToPR[this.PRToVR[PR]] = -1;
         this.PRToVR[PR] = -1;
-        this.PRNU[PR] = Integer.MAX_VALUE;
-        this.PRStack.offerLast(PR);
+        setPRNU(PR, Integer.MAX_VALUE);
+        this.freePRs[(this.freePRHead + this.freePRCount++) % this.k] = PR;
+    }
+    /**
+     * @return the cycles that spilling PR adds: a store unless it's clean, and a reload unless it's never used again
+     */
+    int spillCost(int PR){
+        if (this.PRNU[PR] == Integer.MAX_VALUE) return 0;
+        int VR = this.PRToVR[PR];
+        if (this.VRToSpillLoc[VR] < 1) return LOADI_CYCLES;
+        int reload = LOADI_CYCLES + MEMORY_CYCLES;
+        return isClean(PR) ? reload : 2 * reload;
+    }
+    /** static latency weights of the spill code, a memory operation counting 3 and a loadI 1 */
+    private static final int LOADI_CYCLES = 1;
+    private static final int MEMORY_CYCLES = 3;
+    /**
+     * @return the static latency weight of code, a load, store or mult counting MEMORY_CYCLES and any other operation
+     *         LOADI_CYCLES; 0 if code is null
+     */
+    static long weightedCycles(IRBlock code){
+        long cycles = 0;
+        for (int op = 0; code != null && op < code.size(); op++) {
+            Opcode opCode = code.getOpCode(op);
+            cycles += opCode == Opcode.load || opCode == Opcode.store || opCode == Opcode.mult ? MEMORY_CYCLES : LOADI_CYCLES;
+        }
+        return cycles;
+    }
+    private void setPRNU(int PR, int NU) {
+        this.PRNU[PR] = NU;
+        boolean clean = isClean(PR);
+        if (clean != this.PRClean[PR]) {
+            this.PRClean[PR] = clean;
+            this.cleanCount += clean ? 1 : -1;
+        }
+        if (this.victims != null) this.victims.set(PR, NU, clean);
     }
     /**
-     * 
+     * A value is clean when spilling it needs no store: it can be rematerialized, it is still in its spill slot
+     * from an earlier spill (a VR is only defined once, so a reloaded value can't have changed), or it is never used again.
+     * A free register has no next use either
+     */
+    boolean isClean(int PR) {
+        return this.PRNU[PR] == Integer.MAX_VALUE || this.VRToSpillLoc[this.PRToVR[PR]] != Integer.MAX_VALUE;
+    }
+    /**
+     * spills the value in x, inserting the spill code before operation op
      * @param x
-     * @param curOpRecord
+     * @param op
      */
-    private void spill(Integer x, OpRecord curOpRecord) {
-        //special handling for the scenario when curOpRecord is LoadI, since it can be rematerialized
-        //System.out.println(String.format("current value of VRToSpillLoc[%d]: %d", this.PRToVR[x], this.VRToSpillLoc[this.PRToVR[x]]));
-        if (this.VRToSpillLoc[this.PRToVR[x]] <= 0){
-            //System.out.println("rematerialize " + curOpRecord);
-            //since the VR is now stored in memory, we should reset its value in VRToPR
+    private void spill(int x, int op) {
+        //clean values, e.g. the ones from a loadI that can be rematerialized, need no store
+        if (isClean(x)){
+            //nothing to store, restore() will rematerialize or reload it
         } else {
-            //go here: " + curOpRecord);
             //general cases
-            int curOpRecordIndex = curOpRecord.getLine();
-            OpRecord preOpRecord = curOpRecord.getPrev();
-            OpRecord loadIRecord = new OpRecord(-1, Opcode.loadI, 
-                                                new Operand(this.spilledAddr, this.spilledAddr, this.spilledAddr, null, false), 
-                                                null, 
-                                                new Operand(null, null, this.reservedRegister, curOpRecordIndex, false));
-            OpRecord storeRecord = new OpRecord(-1, Opcode.store, 
-                                                new Operand(null, this.PRToVR[x], x, null, false), 
-                                                null, 
-                                                new Operand(null, null, this.reservedRegister, Integer.MAX_VALUE, false));
-            
-            //update spilledAddr and VRToSpilledLoc
-            this.VRToSpillLoc[this.PRToVR[x]] = this.spilledAddr;
-            this.spilledAddr += 4;
-            
-            //set each operation's prev and next
-            preOpRecord.setNext(loadIRecord);
-
-            loadIRecord.setPrev(preOpRecord);
-            loadIRecord.setNext(storeRecord);
-
-            storeRecord.setPrev(loadIRecord);
-            storeRecord.setNext(curOpRecord);
-
-            curOpRecord.setPrev(storeRecord);
+            if (this.reservedRegister != -1) {
+                store(x, this.reservedRegister, op);
+            } else {
+                borrowRegister(x, op);
+            }
         }
         
         //since the VR is now stored in memory, we should reset its value in VRToPR
         this.VRToPR[this.PRToVR[x]] = -1;
-        // this.PRToVR[x] = -1;
-        // this.PRNU[this.PRToVR[x]] = Integer.MAX_VALUE;
     }
     /**
-     * 
+     * stores the value in x into a spill slot, the slot of a dead VR if there is one, through addressRegister
+     */
+    private void store(int x, int addressRegister, int op) {
+        store(x, addressRegister, op, -1);
+    }
+    /**
+     * @param keptSlot a slot that must not be reused yet, -1 if there is none
+     */
+    private void store(int x, int addressRegister, int op, int keptSlot) {
+        if (this.freeSlotCount > 1 && this.freeSlots[this.freeSlotCount - 1] == keptSlot) {
+            // take the slot under the kept one, so that no new slot is made while a free one is left
+            this.freeSlots[this.freeSlotCount - 1] = this.freeSlots[this.freeSlotCount - 2];
+            this.freeSlots[this.freeSlotCount - 2] = keptSlot;
+        }
+        int slot;
+        if (this.freeSlotCount > 0 && this.freeSlots[this.freeSlotCount - 1] != keptSlot) {
+            slot = this.freeSlots[--this.freeSlotCount];
+        } else {
+            slot = this.spilledAddr;
+            this.spilledAddr += 4;
+        }
+        loadAddress(addressRegister, slot, op);
+        this.block.insertBefore(op, Opcode.store, -1, x, addressRegister);
+        this.storeCount++;
+        
+        //update VRToSpilledLoc
+        this.VRToSpillLoc[this.PRToVR[x]] = slot;
+    }
+    /**
+     * Stores the value in x through a clean PR other than x, the one with the farthest next use. A PR the current
+     * operation doesn't read is freed and its value reloaded or rematerialized at its next use; if only operands
+     * of the operation are clean, one of them is restored right after the store
+     */
+    private void borrowRegister(int x, int op){
+        int borrowed = -1;
+        boolean operand = false;
+        for (int i = 0; i < this.PRNU.length; i++){
+            if (i == x || this.PRToVR[i] == -1) continue;
+            boolean read = this.PRMark[i] >= this.opMarkGeneration;
+            // an operand has to be reloaded, so it is only clean if it's in memory
+            if (read ? this.VRToSpillLoc[this.PRToVR[i]] == Integer.MAX_VALUE : !isClean(i)) continue;
+            if (borrowed == -1 || (operand && !read) || (operand == read && this.PRNU[i] > this.PRNU[borrowed])) {
+                borrowed = i;
+                operand = read;
+            }
+        }
+        if (borrowed == -1) {
+            this.stuck = true;
+            return;
+        }
+        store(x, borrowed, op);
+        if (operand) {
+            restore(this.PRToVR[borrowed], borrowed, op);
+        } else if (this.PRNU[borrowed] == Integer.MAX_VALUE) {
+            freeAPR(borrowed);
+        } else {
+            // the value stays in its spill slot, which can't be reused yet
+            this.VRToPR[this.PRToVR[borrowed]] = -1;
+            this.PRToVR[borrowed] = -1;
+            setPRNU(borrowed, Integer.MAX_VALUE);
+            this.freePRs[(this.freePRHead + this.freePRCount++) % this.k] = borrowed;
+        }
+    }
+    /**
+     * @return whether a PR other than x holds a clean value
+     */
+    private boolean hasCleanRegister(int x){
+        return this.cleanCount > (this.PRClean[x] ? 1 : 0);
+    }
+    /**
+     * Called when the value defined into PR by operation op leaves every PR dirty: stores the dirty value with the
+     * farthest next use through PR before op, so that it stays in its PR but clean. If op reads PR, the operand
+     * has to be clean, and it is restored into PR right after the store
+     */
+    private void storeEarly(int PR, int op){
+        int operandVR = -1;
+        if (this.PRMark[PR] >= this.opMarkGeneration) {
+            int useCount = this.block.useCount(op);
+            for (int i = 0; i < useCount; i++){
+                if (this.block.getPR(op, this.block.use(op, i)) == PR) operandVR = this.block.getVR(op, this.block.use(op, i)) - this.firstVR;
+            }
+            if (this.VRToSpillLoc[operandVR] == Integer.MAX_VALUE) {
+                this.stuck = true;
+                return;
+            }
+        }
+        int x = -1;
+        for (int i = 0; i < this.PRNU.length; i++){
+            if (i != PR && (x == -1 || this.PRNU[i] > this.PRNU[x])) x = i;
+        }
+        // the slot of an operand that dies at op is free already, but the operand still has to be loaded from it
+        store(x, PR, op, operandVR == -1 ? -1 : this.VRToSpillLoc[operandVR]);
+        setPRNU(x, this.PRNU[x]);
+        if (operandVR != -1) restore(operandVR, PR, op);
+    }
+    /**
+     * restores VR into PR, inserting the restore code before operation op
      * @param VR
      * @param PR
-     * @param curOpRecord
+     * @param op
      */
-    private void restore(Integer VR, Integer PR, OpRecord curOpRecord){
-        int curOpRecordIndex = curOpRecord.getLine();
-        OpRecord preOpRecord = curOpRecord.getPrev();
-        //System.out.println("current VRToSpillLoc: ");
-        // for (int i = 0; i < this.VRToSpillLoc.length; i++) {
-        //     System.out.println(String.format("%d: %d", i, this.VRToSpillLoc[i]));
-        // }
+    private void restore(int VR, int PR, int op){
         //special handling for rematerialization value
         if (this.VRToSpillLoc[VR] < 1) {
-            //System.out.println("now restore " + curOpRecord + ", it's spill loc is " + this.VRToSpillLoc[VR]);
-            OpRecord loadIRecord = new OpRecord(-1, Opcode.loadI, 
-                                                new Operand(-this.VRToSpillLoc[VR], -this.VRToSpillLoc[VR], -this.VRToSpillLoc[VR], null, false), 
-                                                null, 
-                                                new Operand(null, VR, PR, curOpRecordIndex, false));
-            preOpRecord.setNext(loadIRecord);
-
-            loadIRecord.setPrev(preOpRecord);
-            loadIRecord.setNext(curOpRecord);
-
-            curOpRecord.setPrev(loadIRecord);
+            this.block.insertBefore(op, Opcode.loadI, -this.VRToSpillLoc[VR], -1, PR);
+            this.restoreCount++;
         } else if (this.VRToSpillLoc[VR] > 32767 && this.VRToSpillLoc[VR] != Integer.MAX_VALUE) {
-            //general case
-            OpRecord loadIRecord = new OpRecord(-1, Opcode.loadI, 
-                                                new Operand(this.VRToSpillLoc[VR], this.VRToSpillLoc[VR], this.VRToSpillLoc[VR], null, false), 
-                                                null, 
-                                                new Operand(null, null, this.reservedRegister, curOpRecordIndex, false));
-            OpRecord loadRecord = new OpRecord(-1, Opcode.load, 
-                                                new Operand(null, null, this.reservedRegister, null, false), 
-                                                null, 
-                                                new Operand(null, VR, PR, curOpRecordIndex, false));
-            
-            preOpRecord.setNext(loadIRecord);
-
-            loadIRecord.setPrev(preOpRecord);
-            loadIRecord.setNext(loadRecord);
-
-            loadRecord.setPrev(loadIRecord);
-            loadRecord.setNext(curOpRecord);
-
-            curOpRecord.setPrev(loadRecord);
+            //general case; without a reserved register PR holds its own address
+            int addressRegister = this.reservedRegister != -1 ? this.reservedRegister : PR;
+            loadAddress(addressRegister, this.VRToSpillLoc[VR], op);
+            this.block.insertBefore(op, Opcode.load, -1, addressRegister, PR);
+            this.restoreCount++;
         }
-        //update spilledAddr and VRToSpilledLoc
-        this.VRToSpillLoc[VR] = Integer.MAX_VALUE;
+        //VRToSpillLoc[VR] is kept: the value stays clean in its spill slot
+    }
+    /**
+     * inserts a loadI of a spill address into register before op, unless register is the reserved one and already
+     * holds it: nothing but spill code writes the reserved register, so it keeps the last address loaded into it
+     */
+    private void loadAddress(int register, int address, int op){
+        if (register == this.reservedRegister && address == this.reservedAddress) return;
+        this.block.insertBefore(op, Opcode.loadI, address, -1, register);
+        if (register == this.reservedRegister) this.reservedAddress = address;
     }
 }
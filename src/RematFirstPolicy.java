@@ -0,0 +1,31 @@
+/**
+ * Spills a value that can be rematerialized with a loadI, or that is never used again, whenever there is one, and
+ * only otherwise a value that needs memory. Within each group the farthest next use wins; then a clean value, then
+ * the lowest PR
+ */
+class RematFirstPolicy implements SpillPolicy {
+    @Override
+    public int victim(RegisterAllocator allocator, int op){
+        int x = -1;
+        boolean xCheap = false;
+        for (int i = 0; i < allocator.registerCount(); i++){
+            if (allocator.isMarked(i)) continue;
+            boolean cheap = allocator.isRematerializable(i) || allocator.nextUse(i) == Integer.MAX_VALUE;
+            if (x == -1 || (cheap && !xCheap)) {
+                x = i;
+                xCheap = cheap;
+                continue;
+            }
+            if (cheap != xCheap) continue;
+            if (allocator.nextUse(i) > allocator.nextUse(x)
+                || (allocator.nextUse(i) == allocator.nextUse(x) && allocator.isClean(i) && !allocator.isClean(x))) {
+                x = i;
+            }
+        }
+        return x;
+    }
+    @Override
+    public boolean needsCurrentNextUse(){
+        return true;
+    }
+}
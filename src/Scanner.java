@@ -1,27 +1,49 @@
 import java.util.Map;
 
 
+import Token.Opcode;
 import Token.Token;
 import Token.TokenCategory;
 
-import java.io.FileReader;
 import java.io.UncheckedIOException;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 public class Scanner {
     // currentLineIndex is an integer representing the index that scanner is currently on in the current line
     int currentLineIndex;
-    String currentLine;
+    // currentLineStart is the offset of the current line's first byte in the mapped input
+    int currentLineStart;
     int currentLineLength;
+    // nextLineStart is the offset right after the current line's terminator ("\n", "\r" or "\r\n")
+    int nextLineStart;
     int lineNumber;
     boolean hasPrintedEOL;
     boolean prevIsErrToken;
-    FileReader fr;
-    BufferedReader br;
+    // the input file is mapped read-only and walked as ASCII bytes in place, one line at a time
+    // a gzip-compressed input is instead decompressed as a stream into streamBuffer, which input then wraps
+    ByteBuffer input;
+    int inputLength;
+    InputStream stream;
+    byte[] streamBuffer;
     File file;
+    WhitespaceSkipper skipper;
+
+    // the current token, i.e. the one most recently scanned by next(); these fields are reused for every token
+    private TokenCategory category;
+    private Opcode opCode; //only set for opcode tokens
+    private int value; //value of a CONSTANT, or the register number of a REGISTER
+    private int line;
+    private int lexemeStart; //[lexemeStart, lexemeEnd) of the current line
+    private int lexemeEnd;
 
     public static final Map<String, TokenCategory> OPERATORS = Map.of(
         "load",  TokenCategory.MEMOP, 
@@ -37,12 +59,117 @@ public class Scanner {
     );
 
     public Scanner(File file) {
-        try {
+        this(file, new Options());
+    }
+    public Scanner(File file, Options options) {
+        this.skipper = options.isVectorScan() ? WhitespaceSkipper.vectorized() : WhitespaceSkipper.SCALAR;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
             this.file = file;
-            this.fr = new FileReader(file);
-            this.br = new BufferedReader(fr);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file is too large to be mapped: " + file.getName());
+            }
+            // the mapping stays valid after the channel is closed
+            this.input = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.inputLength = (int) size;
             this.lineNumber = 0;
-        } catch (FileNotFoundException e) {
+            if (isGzip()) {
+                this.stream = new GZIPInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE);
+                this.streamBuffer = new byte[STREAM_BUFFER_SIZE];
+                this.input = ByteBuffer.wrap(this.streamBuffer);
+                this.inputLength = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    /**
+     * creates a scanner over the lines in [start, end) of another scanner's mapped input; the first line is
+     * numbered linesBefore + 1. Chunk scanners only read the shared mapping, so they can run on different threads
+     */
+    private Scanner(Scanner whole, int start, int end, int linesBefore){
+        this.file = whole.file;
+        this.skipper = whole.skipper;
+        this.input = whole.input;
+        this.nextLineStart = start;
+        this.inputLength = end;
+        this.lineNumber = linesBefore;
+    }
+    /**
+     * @return whether the input is mapped as a whole and can be split into chunks (a gzip stream can't)
+     */
+    boolean canSplit(){
+        return this.streamBuffer == null;
+    }
+    /**
+     * Splits the mapped input into chunks of about chunkSize bytes; every chunk but the first starts right after a '\n'
+     * @return the start offsets of the chunks, followed by the end of the input
+     */
+    int[] splitIntoChunks(int chunkSize){
+        int[] bounds = new int[this.inputLength / chunkSize + 2];
+        int count = 0;
+        bounds[count++] = 0;
+        int next = chunkSize;
+        while (next < this.inputLength) {
+            int end = next;
+            while (end < this.inputLength && this.input.get(end) != '\n') end++;
+            if (end + 1 >= this.inputLength) break;
+            bounds[count++] = end + 1;
+            next = end + 1 + chunkSize;
+        }
+        bounds[count++] = this.inputLength;
+        return Arrays.copyOf(bounds, count);
+    }
+    /**
+     * @return the number of line terminators in [start, end) of the mapped input, counted like BufferedReader.readLine()
+     */
+    int countLineEnds(int start, int end){
+        int lines = 0;
+        while ((start = this.skipper.findLineEnd(this.input, start, end)) < end) {
+            lines++;
+            if (this.input.get(start) == '\r' && start + 1 < this.inputLength && this.input.get(start + 1) == '\n') start++;
+            start++;
+        }
+        return lines;
+    }
+    /**
+     * @return a scanner over the chunk [start, end) of this scanner's mapped input
+     */
+    Scanner chunk(int start, int end, int linesBefore){
+        return new Scanner(this, start, end, linesBefore);
+    }
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+    /**
+     * @return true if the mapped input starts with the gzip magic bytes
+     */
+    private boolean isGzip(){
+        return this.inputLength >= 2 && this.input.get(0) == (byte) 0x1f && this.input.get(1) == (byte) 0x8b;
+    }
+    /**
+     * Moves the bytes that haven't been scanned yet (from nextLineStart on) to the front of the stream buffer, and
+     * reads more decompressed bytes after them. The buffer only grows when a single line doesn't fit in it.
+     * @return false if the stream has no more bytes
+     */
+    private boolean refill(){
+        int unread = this.inputLength - this.nextLineStart;
+        if (this.nextLineStart > 0) {
+            System.arraycopy(this.streamBuffer, this.nextLineStart, this.streamBuffer, 0, unread);
+        } else if (unread == this.streamBuffer.length) {
+            this.streamBuffer = Arrays.copyOf(this.streamBuffer, this.streamBuffer.length * 2);
+            this.input = ByteBuffer.wrap(this.streamBuffer);
+        }
+        this.nextLineStart = 0;
+        this.inputLength = unread;
+        try {
+            int read = this.stream.read(this.streamBuffer, unread, this.streamBuffer.length - unread);
+            if (read < 0) {
+                this.stream.close();
+                this.stream = null;
+                return false;
+            }
+            this.inputLength += read;
+            return true;
+        } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
@@ -53,173 +180,332 @@ public class Scanner {
     public void scanEntireFile(){
         System.out.println(String.format("scanning the entire file: %s", this.file.getName()));
 
-        Token nextToken;
-        while ((nextToken = nextToken()) != null){
-            
-            System.out.println(nextToken.toString());
-            if (nextToken.getTokenCategory().ordinal() == 9) break;
-        }
+        do {
+            next();
+            System.out.println(currentToken().toString());
+        } while (this.category != TokenCategory.EOF);
     }
     /**
      * 
-     * @return 
+     * @return the next token as an object; it is built from the primitive token fields, so callers that
+     *         scan a lot of tokens should use next() instead
      * sample return value:
      *      {
      *          ["1: ", "< CONST, "27" >""]
      *      }
      */
     public Token nextToken(){
-        try{
-            // return a EOL token if the last token that we scanned has error
-            if (prevIsErrToken) {
-                // reset prevIsErrToken to false
-                this.prevIsErrToken = false;
-                return new Token(this.lineNumber, TokenCategory.EOL, "\\n");
-            }
-            
-            //System.out.println("currentLineIndex: " + this.currentLineIndex);
-            // keep scanning this current line
-            if (this.currentLineIndex < this.currentLineLength){
-                //System.out.println("currentLineIndex: " + this.currentLineIndex);
-                //have to check whether currentLineLength != 0, otherwise the first line of file will never be read
-                //System.out.println("currentLine: " + this.currentLine);
-                Token nextToken = scanNextToken();
-                return nextToken;
-            } else if (this.currentLineIndex == this.currentLineLength && this.currentLineLength != 0 && !this.hasPrintedEOL){
-                this.currentLineIndex++;//manually increment to make sure the next nextToken() call can start reading the next line
-                return new Token(this.lineNumber, TokenCategory.EOL, "\\n");
-            } 
-            else { // read a new line if we've finished scanning the previous line
-                if ((this.currentLine = br.readLine()) != null){
-                    this.hasPrintedEOL = false;
-                    this.currentLineLength = this.currentLine.length();
-                    this.lineNumber++;
-                    this.currentLineIndex = 0;
-                    //System.out.println(String.format("Start reading a new line: %s", this.currentLine));
-                    Token nextToken = scanNextToken();
-                    return nextToken;
-                } else {
-                    
-                    return new Token(++this.lineNumber, TokenCategory.EOF, "");
-                }
+        next();
+        return currentToken();
+    }
+    /**
+     * Scans the next token into the token fields (category, opCode, value, line and the lexeme's position)
+     * without allocating anything
+     * @return the category of the scanned token
+     */
+    public TokenCategory next(){
+        // return a EOL token if the last token that we scanned has error
+        if (prevIsErrToken) {
+            // reset prevIsErrToken to false
+            this.prevIsErrToken = false;
+            return setToken(TokenCategory.EOL);
+        }
+        
+        // keep scanning this current line
+        if (this.currentLineIndex < this.currentLineLength){
+            //have to check whether currentLineLength != 0, otherwise the first line of file will never be read
+            return scanNextToken();
+        } else if (this.currentLineIndex == this.currentLineLength && this.currentLineLength != 0 && !this.hasPrintedEOL){
+            this.currentLineIndex++;//manually increment to make sure the next nextToken() call can start reading the next line
+            return setToken(TokenCategory.EOL);
+        } 
+        else { // read a new line if we've finished scanning the previous line
+            if (advanceLine()){
+                this.hasPrintedEOL = false;
+                this.lineNumber++;
+                this.currentLineIndex = 0;
+                return scanNextToken();
+            } else {
+                ++this.lineNumber;
+                return setToken(TokenCategory.EOF);
             }
-        }catch (IOException e){
-            System.err.println("An error occurred while parsing file: " + this.file.getName());
-            return null;
         }
         
     }
+    /**
+     * the current token is a word-less token (EOL/EOF)
+     */
+    private TokenCategory setToken(TokenCategory category){
+        this.category = category;
+        this.opCode = null;
+        this.value = -1;
+        this.line = this.lineNumber;
+        this.lexemeStart = this.lexemeEnd = -1;
+        return category;
+    }
+    /**
+     * @return the current token (the one most recently scanned by next()) as a Token object, for printing
+     */
+    public Token currentToken(){
+        switch (this.category) {
+            case EOL:
+                return new Token(this.line, TokenCategory.EOL, "\\n");
+            case EOF:
+                return new Token(this.line, TokenCategory.EOF, "");
+            default:
+                return new Token(this.line, this.category, lexeme(this.lexemeStart, this.lexemeEnd), this.opCode, this.value);
+        }
+    }
+    /**
+     * Moves the current line window to the next line of the input, following the same line
+     * terminator rules as BufferedReader.readLine() so that line numbers stay the same
+     * @return false if there is no line left in the input
+     */
+    private boolean advanceLine(){
+        int start = this.nextLineStart;
+        int end = this.skipper.findLineEnd(this.input, start, this.inputLength);
+        // a streamed input may only hold the beginning of the line, or a '\r' without the byte after it
+        while (this.stream != null 
+            && (end == this.inputLength || (end + 1 == this.inputLength && this.input.get(end) == '\r'))) {
+            boolean hasMoreInput = refill();
+            // refill() moved the line to the front of the buffer
+            end -= start;
+            start = 0;
+            if (!hasMoreInput) break;
+            end = this.skipper.findLineEnd(this.input, end, this.inputLength);
+        }
+        if (start >= this.inputLength) return false;
+        this.currentLineStart = start;
+        this.currentLineLength = end - start;
+        if (end == this.inputLength) {
+            this.nextLineStart = end;
+        } else if (this.input.get(end) == '\r' && end + 1 < this.inputLength && this.input.get(end + 1) == '\n') {
+            this.nextLineStart = end + 2;
+        } else {
+            this.nextLineStart = end + 1;
+        }
+        return true;
+    }
+    /**
+     * @return the byte at index i of the current line
+     */
+    private byte charAt(int i){
+        return this.input.get(this.currentLineStart + i);
+    }
     /**
      * if there's an error when scanning the next token (word), report the error
-     * @param currentLine
-     * @param currentLineIndex
-     * @param lineNumber
+     * 
+     * The word is recognized in a single pass over its bytes: the same bytes that decide where the word ends
+     * drive the lexer DFA, and constants/register numbers are accumulated while the DFA is in a digit state
      * @return
      */
-    private Token scanNextToken(){
-        //System.out.println("current line under scanning: " + this.currentLine);
-        char[] currentLineCharArr = this.currentLine.toCharArray();
+    private TokenCategory scanNextToken(){
         // move the start index (currentLineIndex) to the first non-whitespace character
-        while (this.currentLineIndex < this.currentLineLength && Character.isWhitespace(currentLineCharArr[this.currentLineIndex])){
-            this.currentLineIndex ++;
-        }
-        //System.out.println("current line index: " + this.currentLineIndex);
+        this.currentLineIndex = this.skipper.skipWhitespace(this.input, 
+            this.currentLineStart + this.currentLineIndex, this.currentLineStart + this.currentLineLength) - this.currentLineStart;
         
         if (this.currentLineIndex == this.currentLineLength){
             this.hasPrintedEOL = true;
-            return new Token(this.lineNumber, TokenCategory.EOL, "\\n");
+            return setToken(TokenCategory.EOL);
          };
         
+        // the first character always belongs to the word
+        byte b = charAt(this.currentLineIndex);
+        int state = TRANSITIONS[START * NUM_CLASSES + CHAR_CLASS[b & 0xFF]];
+        long value = ACCUMULATES[state] ? b - '0' : 0;
         int endOfNextTokenIndex = this.currentLineIndex + 1;
-        // check whether the following two characters is a comment
-        if (endOfNextTokenIndex < this.currentLineLength){
-            if ((currentLineCharArr[currentLineIndex] == currentLineCharArr[endOfNextTokenIndex]) && 
-            (currentLineCharArr[currentLineIndex] == '/')){
+        // move the end index (endOfNextTokenIndex) to the last index before a whitespace/register/into sign
+        while (endOfNextTokenIndex < this.currentLineLength) {
+            b = charAt(endOfNextTokenIndex);
+            int charClass = CHAR_CLASS[b & 0xFF];
+            if (ENDS_WORD[charClass]) break;
+            if (charClass == C_R 
+                && (endOfNextTokenIndex + 1 == this.currentLineLength || charAt(endOfNextTokenIndex + 1) != 'e')) break;
+            state = TRANSITIONS[state * NUM_CLASSES + charClass];
+            if (state == COMMENT) {
                 this.currentLineIndex = this.currentLineLength + 1;
-                return new Token(this.lineNumber, TokenCategory.EOL, "\\n");
+                return setToken(TokenCategory.EOL);
+            }
+            if (ACCUMULATES[state]) {
+                value = value * 10 + (b - '0');
+                if (value > Integer.MAX_VALUE) state = DEAD;
             }
-        }
-        
-        
-        // move the end index (endOfNextTokenIndex) to the last index before a whitespace/register/into sign
-        while (endOfNextTokenIndex < this.currentLineLength
-            && !Character.isWhitespace(currentLineCharArr[endOfNextTokenIndex])
-            && currentLineCharArr[endOfNextTokenIndex] != '='
-            && currentLineCharArr[endOfNextTokenIndex] != ','
-            && (currentLineCharArr[endOfNextTokenIndex] != 'r' || currentLineCharArr[endOfNextTokenIndex + 1] == 'e')) {
             endOfNextTokenIndex++;
         }
-        String tokenLexeme = new String(currentLineCharArr, this.currentLineIndex, endOfNextTokenIndex - this.currentLineIndex);
-        //System.out.println("current lexeme is: " + tokenLexeme);
         
-        TokenCategory category = null;
-
-        if (OPERATORS.containsKey(tokenLexeme)){
-            category = OPERATORS.get(tokenLexeme);
-
-        } else if (isValidInteger(tokenLexeme)) {
-            category = TokenCategory.CONSTANT;
-            
-        } else if (isRegister(tokenLexeme)) {
-            category = TokenCategory.REGISTER;
-            
-        } else if (tokenLexeme.equals(",")){
-            category = TokenCategory.COMMA;
-
-        } else if (isInto(tokenLexeme)){
-            category = TokenCategory.INTO;
-
-        } else {
-            //printErr(tokenLexeme);
+        TokenCategory category = ACCEPTS[state];
+        this.line = this.lineNumber;
+        this.lexemeStart = this.currentLineIndex;
+        this.lexemeEnd = endOfNextTokenIndex;
+        if (category == null) {
             this.currentLineIndex = this.currentLineLength + 1;
             this.prevIsErrToken = true;
-            return new Token(this.lineNumber, TokenCategory.ERR, tokenLexeme);
+            this.category = TokenCategory.ERR;
+            this.opCode = null;
+            this.value = -1;
+            return TokenCategory.ERR;
         }
         this.currentLineIndex = endOfNextTokenIndex;
-        return new Token(this.lineNumber, category, tokenLexeme);
-        // while (this.currentLineIndex < this.currentLineLength){
-        //     if (currentLineCharArr[this.currentLineIndex] == 'l'){
-        //         if ((this.currentLineIndex + 2 < this.currentLineLength) && currentLineCharArr[this.currentLineIndex + 1] == 'o'){
-        //             if ((this.currentLineIndex + 2 < this.currentLineLength) && currentLineCharArr[this.currentLineIndex + 2] == 'a'){
-        //                 if ((this.currentLineIndex + 2 < this.currentLineLength) && currentLineCharArr[this.currentLineIndex + 3] == 'd'){
-        //                     if (this.currentLineIndex + 4 < this.currentLineLength && currentLineCharArr[currentLineIndex + 4] == 'l'){
-        //                         outputToken = new Token(this.lineNumber, 1, "loadl");
-        //                         return outputToken;
-        //                     } else {
-        //                         outputToken = new Token(this.lineNumber, 0, "load");
-        //                     }
-        //                 } else {
-        //                     System.err.println()
-        //                 }
-        //             }
-        //         }
-        //     }
-        // }
-    }
-    private static boolean isValidInteger(String str) {
-        if (str == null) {
-            return false; // Null strings are not integers
+        this.category = category;
+        this.opCode = ACCEPTS_OPCODE[state];
+        this.value = (int) value;
+        return category;
+    }
+    /**
+     * decodes the bytes [start, end) of the current line; this is the only place where the scanner builds a String.
+     * The current line stays available until next() moves past its EOL token, so the parser can still
+     * ask for the lexemes of an operation's tokens when it reports an error
+     */
+    String lexeme(int start, int end){
+        byte[] bytes = new byte[end - start];
+        this.input.get(this.currentLineStart + start, bytes);
+        return new String(bytes, Charset.defaultCharset());
+    }
+    public TokenCategory getCategory(){
+        return this.category;
+    }
+    public Opcode getOpCode(){
+        return this.opCode;
+    }
+    public int getValue(){
+        return this.value;
+    }
+    public int getLine(){
+        return this.line;
+    }
+    public int getLexemeStart(){
+        return this.lexemeStart;
+    }
+    public int getLexemeEnd(){
+        return this.lexemeEnd;
+    }
+
+    /*
+     * Lexer DFA.
+     * Every byte is first mapped to a character class; the next state is TRANSITIONS[state * NUM_CLASSES + class].
+     * A word is valid when the DFA stops in a state with a non-null ACCEPTS entry. The DFA accepts the same words as
+     * the old OPERATORS lookup + Integer.parseInt() checks, i.e. constants may carry a '+' sign, "-0" is a constant,
+     * and any value above Integer.MAX_VALUE is an error.
+     */
+    private static final int C_OTHER = 0;
+    private static final int C_WHITESPACE = 1; // see WhitespaceSkipper.isWhitespace()
+    private static final int C_ZERO = 2;
+    private static final int C_DIGIT = 3; // 1-9
+    private static final int C_PLUS = 4;
+    private static final int C_MINUS = 5;
+    private static final int C_COMMA = 6;
+    private static final int C_EQUALS = 7;
+    private static final int C_GREATER = 8;
+    private static final int C_SLASH = 9;
+    private static final int C_R = 10;
+    // the remaining letters of the opcodes get their own classes starting here
+    private static final int C_FIRST_LETTER = 11;
+
+    private static final int START = 0;
+    private static final int DEAD = 1;
+    private static final int COMMA = 2;
+    private static final int EQUALS = 3;
+    private static final int INTO = 4;
+    private static final int SLASH = 5;
+    private static final int COMMENT = 6;
+    private static final int PLUS = 7;
+    private static final int MINUS = 8;
+    private static final int NUMBER = 9;
+    private static final int NEG_ZERO = 10; // "-0", "-00", ... are still non-negative integers
+    private static final int REG = 11; // "r" is also the first state of "rshift"
+    private static final int REG_PLUS = 12;
+    private static final int REG_MINUS = 13;
+    private static final int REG_NUMBER = 14;
+    private static final int REG_NEG_ZERO = 15;
+    // the rest of the opcode trie starts here
+    private static final int FIRST_TRIE_STATE = 16;
+    private static final int MAX_STATES = 64;
+
+    private static final byte[] CHAR_CLASS = new byte[256];
+    private static final int NUM_CLASSES;
+    private static final int[] TRANSITIONS;
+    private static final TokenCategory[] ACCEPTS = new TokenCategory[MAX_STATES];
+    private static final Opcode[] ACCEPTS_OPCODE = new Opcode[MAX_STATES];
+    private static final boolean[] ACCUMULATES = new boolean[MAX_STATES];
+    private static final boolean[] ENDS_WORD;
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if (WhitespaceSkipper.isWhitespace((byte) c)) CHAR_CLASS[c] = C_WHITESPACE;
         }
-        try {
-            int num = Integer.parseInt(str); // Attempt to parse the string as an integer
-            return num >= 0; // If parsing succeeds, it's an integer
-        } catch (NumberFormatException e) {
-            return false; // If parsing fails (NumberFormatException), it's not an integer
+        CHAR_CLASS['0'] = C_ZERO;
+        for (int c = '1'; c <= '9'; c++) CHAR_CLASS[c] = C_DIGIT;
+        CHAR_CLASS['+'] = C_PLUS;
+        CHAR_CLASS['-'] = C_MINUS;
+        CHAR_CLASS[','] = C_COMMA;
+        CHAR_CLASS['='] = C_EQUALS;
+        CHAR_CLASS['>'] = C_GREATER;
+        CHAR_CLASS['/'] = C_SLASH;
+        CHAR_CLASS['r'] = C_R;
+        int numClasses = C_FIRST_LETTER;
+        for (String spelling : OPERATORS.keySet()) {
+            for (char c : spelling.toCharArray()) {
+                if (CHAR_CLASS[c] == C_OTHER) CHAR_CLASS[c] = (byte) numClasses++;
+            }
         }
-    }
-    private static boolean isRegister(String str){
-        if (str == null){
-            return false;
+        NUM_CLASSES = numClasses;
+        TRANSITIONS = new int[MAX_STATES * NUM_CLASSES];
+        java.util.Arrays.fill(TRANSITIONS, DEAD);
+
+        setTransition(START, C_COMMA, COMMA);
+        setTransition(START, C_EQUALS, EQUALS);
+        setTransition(EQUALS, C_GREATER, INTO);
+        setTransition(START, C_SLASH, SLASH);
+        setTransition(SLASH, C_SLASH, COMMENT);
+        setNumberTransitions(START, PLUS, MINUS, NUMBER, NEG_ZERO);
+        setTransition(START, C_R, REG);
+        setNumberTransitions(REG, REG_PLUS, REG_MINUS, REG_NUMBER, REG_NEG_ZERO);
+
+        ACCEPTS[COMMA] = TokenCategory.COMMA;
+        ACCEPTS[INTO] = TokenCategory.INTO;
+        ACCEPTS[NUMBER] = TokenCategory.CONSTANT;
+        ACCEPTS[NEG_ZERO] = TokenCategory.CONSTANT;
+        ACCEPTS[REG_NUMBER] = TokenCategory.REGISTER;
+        ACCEPTS[REG_NEG_ZERO] = TokenCategory.REGISTER;
+        ACCUMULATES[NUMBER] = true;
+        ACCUMULATES[REG_NUMBER] = true;
+
+        // opcode trie
+        int nextState = FIRST_TRIE_STATE;
+        for (Map.Entry<String, TokenCategory> operator : OPERATORS.entrySet()) {
+            int state = START;
+            for (char c : operator.getKey().toCharArray()) {
+                int index = state * NUM_CLASSES + CHAR_CLASS[c];
+                if (TRANSITIONS[index] == DEAD) TRANSITIONS[index] = nextState++;
+                state = TRANSITIONS[index];
+            }
+            ACCEPTS[state] = operator.getValue();
+            ACCEPTS_OPCODE[state] = Opcode.valueOf(operator.getKey());
         }
-        boolean isRegister = str.charAt(0) == 'r' && isValidInteger(str.substring(1));
-        //System.out.println("the current str —\t" + str + "\t —is a register: " + isRegister);
-        return isRegister;
+        if (nextState > MAX_STATES) throw new IllegalStateException("lexer DFA needs more than " + MAX_STATES + " states");
+
+        ENDS_WORD = new boolean[NUM_CLASSES];
+        ENDS_WORD[C_WHITESPACE] = true;
+        ENDS_WORD[C_EQUALS] = true;
+        ENDS_WORD[C_COMMA] = true;
     }
-    private static boolean isInto(String str){
-        return str.equals("=>");
+    private static void setTransition(int from, int charClass, int to){
+        TRANSITIONS[from * NUM_CLASSES + charClass] = to;
     }
-    private static boolean isComment(String str){
-        return str.equals("//");
+    /**
+     * adds the transitions of an optionally signed integer that starts right after state from
+     */
+    private static void setNumberTransitions(int from, int plus, int minus, int number, int negZero){
+        setTransition(from, C_PLUS, plus);
+        setTransition(from, C_MINUS, minus);
+        setTransition(from, C_ZERO, number);
+        setTransition(from, C_DIGIT, number);
+        setTransition(plus, C_ZERO, number);
+        setTransition(plus, C_DIGIT, number);
+        setTransition(number, C_ZERO, number);
+        setTransition(number, C_DIGIT, number);
+        setTransition(minus, C_ZERO, negZero);
+        setTransition(negZero, C_ZERO, negZero);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,39 @@
+/**
+ * Chooses the PR whose value RegisterAllocator spills when an operation needs a PR and none is free.
+ * A policy only looks at the allocator through its package-private queries, so it keeps no state of its own
+ */
+interface SpillPolicy {
+    /** the names accepted by --spill-policy, the default first */
+    String[] NAMES = {"belady", "lru", "cost", "remat"};
+
+    /**
+     * @return a PR that the current operation op hasn't marked
+     */
+    int victim(RegisterAllocator allocator, int op);
+
+    /**
+     * @return whether the next use of a PR has to be updated at each use of its value; otherwise it stays the one
+     *         the value was defined or restored for
+     */
+    default boolean needsCurrentNextUse(){
+        return false;
+    }
+
+    /**
+     * @return the policy called name, or null if there is none
+     */
+    static SpillPolicy forName(String name){
+        switch (name) {
+            case "belady":
+                return new BeladyPolicy();
+            case "lru":
+                return new LRUPolicy();
+            case "cost":
+                return new CostWeightedPolicy();
+            case "remat":
+                return new RematFirstPolicy();
+            default:
+                return null;
+        }
+    }
+}
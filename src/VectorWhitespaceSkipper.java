@@ -0,0 +1,44 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * WhitespaceSkipper that compares a whole vector of input bytes (16-64 depending on the CPU) per step.
+ * It needs "--add-modules jdk.incubator.vector" at compile and run time, so it is loaded reflectively
+ * through WhitespaceSkipper.vectorized() and compiled separately by the Makefile.
+ */
+class VectorWhitespaceSkipper extends WhitespaceSkipper {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    int skipWhitespace(ByteBuffer input, int from, int to){
+        // most words are separated by a single blank, so don't pay for a vector load in that case
+        if (from < to && !isWhitespace(input.get(from))) return from;
+        while (from + LANES <= to){
+            ByteVector v = ByteVector.fromByteBuffer(SPECIES, input, from, ByteOrder.nativeOrder());
+            VectorMask<Byte> whitespace = v.eq((byte) ' ')
+                .or(v.compare(VectorOperators.GE, (byte) '\t').and(v.compare(VectorOperators.LE, (byte) '\r')))
+                .or(v.compare(VectorOperators.GE, (byte) 0x1C).and(v.compare(VectorOperators.LE, (byte) 0x1F)));
+            int lane = whitespace.not().firstTrue();
+            if (lane < LANES) return from + lane;
+            from += LANES;
+        }
+        return super.skipWhitespace(input, from, to);
+    }
+
+    @Override
+    int findLineEnd(ByteBuffer input, int from, int to){
+        while (from + LANES <= to){
+            ByteVector v = ByteVector.fromByteBuffer(SPECIES, input, from, ByteOrder.nativeOrder());
+            int lane = v.eq((byte) '\n').or(v.eq((byte) '\r')).firstTrue();
+            if (lane < LANES) return from + lane;
+            from += LANES;
+        }
+        return super.findLineEnd(input, from, to);
+    }
+}
@@ -0,0 +1,49 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the next interesting byte of the scanner's input: the next non-whitespace byte of a line and the end of a line.
+ * This class is the scalar implementation; VectorWhitespaceSkipper checks many bytes per step with jdk.incubator.vector
+ * and is only used when it was compiled and the module is present at run time.
+ */
+class WhitespaceSkipper {
+    static final WhitespaceSkipper SCALAR = new WhitespaceSkipper();
+
+    /**
+     * @return the vectorized skipper, or the scalar one when jdk.incubator.vector is not available
+     */
+    static WhitespaceSkipper vectorized(){
+        try {
+            return (WhitespaceSkipper) Class.forName("VectorWhitespaceSkipper").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Same as Character.isWhitespace() restricted to ASCII
+     */
+    static boolean isWhitespace(byte b){
+        return b == ' ' || (b >= '\t' && b <= '\r') || (b >= 0x1C && b <= 0x1F);
+    }
+
+    /**
+     * @return the index of the first non-whitespace byte in [from, to), or to if there is none
+     */
+    int skipWhitespace(ByteBuffer input, int from, int to){
+        while (from < to && isWhitespace(input.get(from))){
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @return the index of the first '\n' or '\r' in [from, to), or to if there is none
+     */
+    int findLineEnd(ByteBuffer input, int from, int to){
+        byte b;
+        while (from < to && (b = input.get(from)) != '\n' && b != '\r'){
+            from++;
+        }
+        return from;
+    }
+}